@@ -0,0 +1,39 @@
+package br.com.dextra.security.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.dextra.security.Credential;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CredentialBenchmark {
+
+	@Benchmark
+	public Credential parse(TokenState state) {
+		return Credential.parse(state.token);
+	}
+
+	@Benchmark
+	public String toStringFull(TokenState state) {
+		return state.credential.toStringFull();
+	}
+
+	/**
+	 * The full token of a credential just parsed, so nothing cached by a previous call is reused.
+	 */
+	@Benchmark
+	public String parseAndToStringFull(TokenState state) {
+		return Credential.parse(state.token).toStringFull();
+	}
+}
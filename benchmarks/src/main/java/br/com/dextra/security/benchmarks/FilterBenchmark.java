@@ -0,0 +1,94 @@
+package br.com.dextra.security.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.dextra.security.AuthenticationFilter;
+import br.com.dextra.security.AuthenticationServlet;
+import br.com.dextra.security.FilterChainStub;
+import br.com.dextra.security.HttpServletRequestStub;
+import br.com.dextra.security.HttpServletResponseStub;
+import br.com.dextra.security.cache.VerifiedTokenCache;
+import br.com.dextra.security.metrics.MetricsRegistry;
+
+/**
+ * The filter on requests that carry a valid token among other cookies, with the request and response stubs of the
+ * unit tests. The logging is disabled (slf4j-nop), so only the cost of the calls is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class FilterState {
+
+		@Param({ "0", "10" })
+		public int otherCookies;
+
+		@Param({ "false", "true" })
+		public boolean verifiedTokenCache;
+
+		@Param({ "true", "false" })
+		public boolean metrics;
+
+		public BenchmarkFilter filter;
+		public HttpServletRequestStub request;
+
+		@Setup(Level.Trial)
+		public void setUp(TokenState token) {
+			token.configuration.setVerifiedTokenCache(verifiedTokenCache ? new VerifiedTokenCache() : null);
+			MetricsRegistry.getInstance().setEnabled(metrics);
+
+			filter = new BenchmarkFilter();
+			filter.setConfiguration(token.configuration);
+
+			request = new HttpServletRequestStub();
+			for (int i = 0; i < otherCookies; i++) {
+				request.addCookie(new Cookie("cookie" + i, "value" + i));
+			}
+			request.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), token.token));
+		}
+	}
+
+	public static class BenchmarkFilter extends AuthenticationFilter {
+
+		public String extract(HttpServletRequest request) {
+			return extractAuthTokenFrom(request);
+		}
+	}
+
+	@Benchmark
+	public String extractAuthTokenFrom(FilterState state) {
+		return state.filter.extract(state.request);
+	}
+
+	@Benchmark
+	public boolean process(FilterState state) throws IOException, ServletException {
+		FilterChainStub chain = new FilterChainStub();
+		state.filter.doFilter(state.request, new HttpServletResponseStub(), chain);
+		if (!chain.wasExecuted()) {
+			throw new IllegalStateException("The token was refused.");
+		}
+		return true;
+	}
+}
@@ -0,0 +1,42 @@
+package br.com.dextra.security.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.utils.AuthenticationUtil;
+
+/**
+ * Signing includes the self verification of {@link br.com.dextra.security.configuration.Configuration}, which is
+ * always done by default.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+
+	@Benchmark
+	public String sign(TokenState state) {
+		return AuthenticationUtil.sign(state.credential, state.configuration);
+	}
+
+	@Benchmark
+	public boolean verify(TokenState state) {
+		return AuthenticationUtil.verify(state.credential, state.signature, state.configuration);
+	}
+
+	@Benchmark
+	public boolean parseAndVerify(TokenState state) {
+		Credential credential = Credential.parse(state.token);
+		return AuthenticationUtil.verify(credential, state.signature, state.configuration);
+	}
+}
@@ -0,0 +1,55 @@
+package br.com.dextra.security.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.dextra.security.utils.SignatureEncodingUtil;
+
+/**
+ * The sizes are the ones of the supported signatures: HMAC-SHA256 and Ed25519 (32 and 64 bytes) and DER encoded
+ * DSA/ECDSA (around 46 and 72 bytes).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignatureEncodingBenchmark {
+
+	@Param({ "32", "46", "64", "72" })
+	public int size;
+
+	private byte[] signature;
+	private String encoded;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		signature = new byte[size];
+		new Random(size).nextBytes(signature);
+		encoded = new String(SignatureEncodingUtil.encode(signature));
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return SignatureEncodingUtil.encode(signature);
+	}
+
+	@Benchmark
+	public byte[] decode() {
+		return SignatureEncodingUtil.decode(encoded);
+	}
+}
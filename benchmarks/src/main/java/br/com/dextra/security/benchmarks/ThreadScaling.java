@@ -0,0 +1,37 @@
+package br.com.dextra.security.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once for each thread count, as JMH only takes one per run:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar br.com.dextra.security.benchmarks.ThreadScaling 1,4,16 FilterBenchmark.process -p algorithm=ECDSA_P256
+ * </pre>
+ *
+ * The arguments after the thread counts are the usual JMH command line.
+ */
+public class ThreadScaling {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		if (args.length == 0) {
+			System.err.println("Usage: ThreadScaling <threads,...> [JMH options]");
+			System.exit(1);
+		}
+
+		String[] jmhArgs = new String[args.length - 1];
+		System.arraycopy(args, 1, jmhArgs, 0, jmhArgs.length);
+		CommandLineOptions options = new CommandLineOptions(jmhArgs);
+
+		for (String threads : args[0].split(",")) {
+			ChainedOptionsBuilder builder = new OptionsBuilder().parent(options).threads(Integer.parseInt(threads
+					.trim()));
+			new Runner(builder.build()).run();
+		}
+	}
+}
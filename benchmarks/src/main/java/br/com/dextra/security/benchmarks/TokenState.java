@@ -0,0 +1,96 @@
+package br.com.dextra.security.benchmarks;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.TokenFormat;
+import br.com.dextra.security.configuration.Configuration;
+import br.com.dextra.security.configuration.ForbiddenResponseHandler;
+import br.com.dextra.security.configuration.StringBase64CertificateRepository;
+import br.com.dextra.security.utils.AuthenticationUtil;
+import br.com.dextra.security.utils.GenerateKeysUtil;
+import br.com.dextra.security.utils.SignatureAlgorithm;
+
+/**
+ * A configuration and a token signed with it, by key algorithm and token shape. <code>HMAC</code> signs with the
+ * secret key, as {@link Configuration#setHmacSelfIssuedTokens(boolean)} does, and the shapes are the
+ * {@link TokenFormat}s, <code>V1_COMPACT</code> being V1 with compact timestamps.
+ */
+@State(Scope.Benchmark)
+public class TokenState {
+
+	public static final String PROVIDER = "Benchmark";
+
+	@Param({ "DSA", "ECDSA_P256", "ED25519", "HMAC" })
+	public String algorithm;
+
+	@Param({ "V1", "V1_COMPACT", "V2" })
+	public String shape;
+
+	@Param({ "8", "64" })
+	public int usernameLength;
+
+	public Configuration configuration;
+	public Credential credential;
+	public String signature;
+	public String token;
+
+	@Setup(Level.Trial)
+	public void setUp() throws GeneralSecurityException, IOException {
+		configuration = createConfiguration();
+
+		credential = newCredential();
+		signature = AuthenticationUtil.sign(credential, configuration);
+		credential.setSignature(signature);
+		token = credential.toStringFull();
+	}
+
+	protected Configuration createConfiguration() throws GeneralSecurityException, IOException {
+		boolean hmac = "HMAC".equals(algorithm);
+
+		StringBase64CertificateRepository repository = GenerateKeysUtil.generateKeys(PROVIDER,
+				hmac ? SignatureAlgorithm.DSA : SignatureAlgorithm.valueOf(algorithm));
+		if (hmac) {
+			repository.configureSecretKey(encode(GenerateKeysUtil.generateSecretKey().getEncoded()));
+		}
+
+		Configuration configuration = new Configuration();
+		configuration.setCertificateRepository(repository);
+		configuration.setMyProvider(PROVIDER);
+		configuration.setNotAuthenticatedHandler(new ForbiddenResponseHandler());
+		configuration.setSignatureAlgorithm(hmac ? SignatureAlgorithm.DSA : SignatureAlgorithm.valueOf(algorithm));
+		configuration.setHmacSelfIssuedTokens(hmac);
+		configuration.setTokenFormat(shape.startsWith("V2") ? TokenFormat.V2 : TokenFormat.V1);
+		configuration.setCompactTimestamps(shape.endsWith("COMPACT"));
+		configuration.validate();
+		return configuration;
+	}
+
+	/**
+	 * @return An unsigned credential of the configured shape.
+	 */
+	public Credential newCredential() {
+		char[] username = new char[usernameLength];
+		Arrays.fill(username, 'u');
+
+		Credential credential = new Credential(new String(username), PROVIDER);
+		credential.setFormat(configuration.getTokenFormat());
+		if (configuration.isCompactTimestamps()) {
+			credential.useCompactTimestamp();
+		}
+		return credential;
+	}
+
+	private static String encode(byte[] key) {
+		return new String(Base64.encodeBase64(key));
+	}
+}
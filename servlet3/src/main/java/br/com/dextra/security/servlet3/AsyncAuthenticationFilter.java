@@ -0,0 +1,107 @@
+package br.com.dextra.security.servlet3;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import br.com.dextra.security.AuthenticationFilter;
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.CredentialHolder;
+
+/**
+ * {@link AuthenticationFilter} for requests that go asynchronous. The validated credential is kept as an attribute of
+ * the request, so it is registered on the {@link CredentialHolder} again whenever the request is dispatched back to the
+ * container ({@link DispatcherType#ASYNC}) without validating the token again. A {@link CredentialAsyncListener}
+ * clears it when the request completes. Tasks given to {@link javax.servlet.AsyncContext#start(Runnable)} can be
+ * wrapped with {@link #withCredential(ServletRequest, Runnable)} and listeners given to
+ * {@link javax.servlet.AsyncContext#addListener(AsyncListener)} with
+ * {@link #withCredential(ServletRequest, AsyncListener)}, so they run authenticated.
+ * <p>
+ * The filter must support async requests and be mapped to the async dispatches:
+ *
+ * <pre>
+ * &lt;filter&gt;
+ *     &lt;filter-name&gt;authentication&lt;/filter-name&gt;
+ *     &lt;filter-class&gt;br.com.dextra.security.servlet3.AsyncAuthenticationFilter&lt;/filter-class&gt;
+ *     &lt;async-supported&gt;true&lt;/async-supported&gt;
+ * &lt;/filter&gt;
+ * &lt;filter-mapping&gt;
+ *     &lt;filter-name&gt;authentication&lt;/filter-name&gt;
+ *     &lt;url-pattern&gt;/*&lt;/url-pattern&gt;
+ *     &lt;dispatcher&gt;REQUEST&lt;/dispatcher&gt;
+ *     &lt;dispatcher&gt;ASYNC&lt;/dispatcher&gt;
+ * &lt;/filter-mapping&gt;
+ * </pre>
+ */
+public class AsyncAuthenticationFilter extends AuthenticationFilter {
+
+	public static final String CREDENTIAL_ATTRIBUTE = Credential.class.getName();
+
+	@Override
+	protected void process(final HttpServletRequest request, HttpServletResponse response, final FilterChain chain)
+			throws IOException, ServletException {
+		Credential credential = getCredential(request);
+		if (credential != null && request.getDispatcherType() != DispatcherType.REQUEST) {
+			try {
+				registerAuthenticationData(credential);
+				chain.doFilter(request, response);
+			} finally {
+				deregisterAuthenticationData();
+			}
+			return;
+		}
+
+		super.process(request, response, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest req, ServletResponse resp) throws IOException, ServletException {
+				Credential authenticated = CredentialHolder.get();
+				req.setAttribute(CREDENTIAL_ATTRIBUTE, authenticated);
+
+				try {
+					chain.doFilter(req, resp);
+				} finally {
+					if (req.isAsyncStarted()) {
+						req.getAsyncContext().addListener(new CredentialAsyncListener(authenticated));
+					}
+				}
+			}
+		});
+	}
+
+	public static Credential getCredential(ServletRequest request) {
+		return (Credential) request.getAttribute(CREDENTIAL_ATTRIBUTE);
+	}
+
+	/**
+	 * @return A task that runs with the credential of the request registered on the {@link CredentialHolder}.
+	 */
+	public static Runnable withCredential(ServletRequest request, final Runnable task) {
+		final Credential credential = getCredential(request);
+		return new Runnable() {
+			@Override
+			public void run() {
+				CredentialHolder.register(credential);
+				try {
+					task.run();
+				} finally {
+					CredentialHolder.deregister();
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return A listener that handles each event with the credential of the request registered on the
+	 *         {@link CredentialHolder}.
+	 */
+	public static AsyncListener withCredential(ServletRequest request, AsyncListener listener) {
+		return new CredentialAsyncListener(getCredential(request), listener);
+	}
+}
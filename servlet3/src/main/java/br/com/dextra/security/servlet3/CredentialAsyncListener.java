@@ -0,0 +1,88 @@
+package br.com.dextra.security.servlet3;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.CredentialHolder;
+
+/**
+ * Keeps the credential of an async request. It registers itself again when the request goes async once more, as the
+ * listeners are dropped on every {@link javax.servlet.ServletRequest#startAsync()}, and removes the credential from the
+ * request when it completes.
+ * <p>
+ * When it wraps a listener of the application, the credential is registered on the {@link CredentialHolder} while each
+ * event is handled by it and cleared right after, as the container threads that deliver the events are pooled.
+ */
+public class CredentialAsyncListener implements AsyncListener {
+
+	private final Credential credential;
+	private final AsyncListener listener;
+
+	public CredentialAsyncListener(Credential credential) {
+		this(credential, null);
+	}
+
+	public CredentialAsyncListener(Credential credential, AsyncListener listener) {
+		this.credential = credential;
+		this.listener = listener;
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) throws IOException {
+		event.getAsyncContext().addListener(this);
+		if (listener != null) {
+			CredentialHolder.register(credential);
+			try {
+				listener.onStartAsync(event);
+			} finally {
+				CredentialHolder.deregister();
+			}
+		}
+	}
+
+	@Override
+	public void onTimeout(AsyncEvent event) throws IOException {
+		if (listener != null) {
+			CredentialHolder.register(credential);
+			try {
+				listener.onTimeout(event);
+			} finally {
+				CredentialHolder.deregister();
+			}
+		}
+	}
+
+	@Override
+	public void onError(AsyncEvent event) throws IOException {
+		if (listener != null) {
+			CredentialHolder.register(credential);
+			try {
+				listener.onError(event);
+			} finally {
+				CredentialHolder.deregister();
+			}
+		}
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) throws IOException {
+		try {
+			if (listener != null) {
+				CredentialHolder.register(credential);
+				listener.onComplete(event);
+			}
+		} finally {
+			CredentialHolder.deregister();
+			if (event.getSuppliedRequest() != null) {
+				event.getSuppliedRequest().removeAttribute(AsyncAuthenticationFilter.CREDENTIAL_ATTRIBUTE);
+			}
+		}
+	}
+
+	public Credential getCredential() {
+		return credential;
+	}
+}
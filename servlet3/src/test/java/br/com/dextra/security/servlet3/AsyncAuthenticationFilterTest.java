@@ -0,0 +1,162 @@
+package br.com.dextra.security.servlet3;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.CredentialHolder;
+import br.com.dextra.security.configuration.Configuration;
+import br.com.dextra.security.configuration.ForbiddenResponseHandler;
+
+public class AsyncAuthenticationFilterTest {
+
+	private HttpServletRequest createRequest(final DispatcherType dispatcherType) {
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+
+		return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if (name.equals("getDispatcherType")) {
+							return dispatcherType;
+						} else if (name.equals("getAttribute")) {
+							return attributes.get(args[0]);
+						} else if (name.equals("setAttribute")) {
+							attributes.put((String) args[0], args[1]);
+						} else if (name.equals("removeAttribute")) {
+							attributes.remove(args[0]);
+						}
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void testAsyncDispatchRegistersTheCredential() throws IOException, ServletException {
+		final Credential credential = new Credential("test", "Test");
+
+		HttpServletRequest request = createRequest(DispatcherType.ASYNC);
+		request.setAttribute(AsyncAuthenticationFilter.CREDENTIAL_ATTRIBUTE, credential);
+
+		final Credential[] registered = new Credential[1];
+		new AsyncAuthenticationFilter().doFilter(request, null, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest req, ServletResponse resp) {
+				registered[0] = CredentialHolder.get();
+			}
+		});
+
+		Assert.assertSame(credential, registered[0]);
+		Assert.assertNull(CredentialHolder.get());
+	}
+
+	@Test
+	public void testWithCredential() throws InterruptedException {
+		final Credential credential = new Credential("test", "Test");
+
+		HttpServletRequest request = createRequest(DispatcherType.ASYNC);
+		request.setAttribute(AsyncAuthenticationFilter.CREDENTIAL_ATTRIBUTE, credential);
+
+		final Credential[] registered = new Credential[1];
+		Thread thread = new Thread(AsyncAuthenticationFilter.withCredential(request, new Runnable() {
+			@Override
+			public void run() {
+				registered[0] = CredentialHolder.get();
+			}
+		}));
+		thread.start();
+		thread.join();
+
+		Assert.assertSame(credential, registered[0]);
+	}
+
+	@Test
+	public void testListenerEventsLeaveNoCredentialBehind() throws IOException {
+		final Credential credential = new Credential("test", "Test");
+
+		HttpServletRequest request = createRequest(DispatcherType.ASYNC);
+		request.setAttribute(AsyncAuthenticationFilter.CREDENTIAL_ATTRIBUTE, credential);
+
+		final Credential[] registered = new Credential[2];
+		AsyncListener listener = AsyncAuthenticationFilter.withCredential(request, new AsyncListener() {
+			@Override
+			public void onTimeout(AsyncEvent event) {
+				registered[0] = CredentialHolder.get();
+			}
+
+			@Override
+			public void onError(AsyncEvent event) {
+				registered[1] = CredentialHolder.get();
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) {
+			}
+		});
+
+		listener.onTimeout(new AsyncEvent(null));
+		Assert.assertNull(CredentialHolder.get());
+		listener.onError(new AsyncEvent(null));
+		Assert.assertNull(CredentialHolder.get());
+
+		Assert.assertSame(credential, registered[0]);
+		Assert.assertSame(credential, registered[1]);
+
+		new CredentialAsyncListener(credential).onTimeout(new AsyncEvent(null));
+		Assert.assertNull(CredentialHolder.get());
+	}
+
+	@Test
+	public void testRequestWithoutTokenIsRejected() throws IOException, ServletException {
+		HttpServletRequest request = createRequest(DispatcherType.REQUEST);
+		final int[] errors = new int[1];
+		HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("sendError")) {
+							errors[0] = (Integer) args[0];
+						}
+						return null;
+					}
+				});
+
+		AsyncAuthenticationFilter filter = new AsyncAuthenticationFilter();
+		Configuration configuration = new Configuration();
+		configuration.setNotAuthenticatedHandler(new ForbiddenResponseHandler());
+		filter.setConfiguration(configuration);
+
+		final boolean[] executed = new boolean[1];
+		filter.doFilter(request, response, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest req, ServletResponse resp) {
+				executed[0] = true;
+			}
+		});
+
+		Assert.assertFalse(executed[0]);
+		Assert.assertEquals(ForbiddenResponseHandler.HTTP_ERROR_CODE, errors[0]);
+	}
+}
@@ -4,10 +4,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.text.ParseException;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -22,10 +19,17 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import br.com.dextra.security.cache.RenewalCache;
+import br.com.dextra.security.cache.VerifiedTokenCache;
 import br.com.dextra.security.configuration.Configuration;
+import br.com.dextra.security.configuration.ConfigurationRegistry;
 import br.com.dextra.security.exceptions.ExpiredAuthTokenException;
 import br.com.dextra.security.exceptions.InvalidAuthTokenException;
+import br.com.dextra.security.exceptions.MalformedAuthTokenException;
 import br.com.dextra.security.exceptions.TimestampParsingException;
+import br.com.dextra.security.metrics.MetricsRegistry;
+import br.com.dextra.security.metrics.Operation;
+import br.com.dextra.security.metrics.Outcome;
 import br.com.dextra.security.utils.AuthenticationUtil;
 
 public class AuthenticationFilter implements Filter {
@@ -34,14 +38,22 @@ public class AuthenticationFilter implements Filter {
 
 	private static final String AUTH_REQUEST_PARAMETER = "auth";
 
-	private Configuration configuration;
+	private static final String AUTHORIZATION_HEADER = "Authorization";
+	private static final String BEARER_SCHEME = "Bearer ";
 
-	private static final Comparator<? super Cookie> cookieComparator = new Comparator<Cookie>() {
-		@Override
-		public int compare(Cookie o1, Cookie o2) {
-			return (-1) * o1.getName().compareTo(o2.getName());
-		}
-	};
+	/**
+	 * The request attribute holding the {@link TokenSource} the token was read from.
+	 */
+	public static final String TOKEN_SOURCE_ATTRIBUTE = AuthenticationFilter.class.getName() + ".tokenSource";
+
+	/**
+	 * The response header carrying the renewed token of the requests authenticated by a header or the query string,
+	 * which get no cookie.
+	 */
+	public static final String RENEWED_TOKEN_HEADER = "X-Auth-Token";
+
+	private Configuration configuration;
+	private ConfigurationRegistry registry;
 
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
@@ -81,8 +93,16 @@ public class AuthenticationFilter implements Filter {
 
 		try {
 			if (mustRenew(credential)) {
-				expireCookies(request, response);
+				if (renewsCookie(request)) {
+					if (configuration.isStableCookieName()) {
+						expireLegacyCookies(request, response);
+					} else {
+						expireCookies(request, response);
+					}
+				}
 				credential = renew(credential, request, response);
+			} else if (configuration.isStableCookieName()) {
+				migrateCookies(request, response, token);
 			}
 		} catch (Exception e) {
 			logger.warn("Error while processing the received authentication token : " + token, e);
@@ -99,10 +119,24 @@ public class AuthenticationFilter implements Filter {
 	}
 
 	public static void expireCookies(HttpServletRequest request, HttpServletResponse response) {
+		expireCookies(request, response, true);
+	}
+
+	/**
+	 * Expires the <code>auth&lt;millis&gt;</code> cookies, keeping the one named
+	 * {@link AuthenticationServlet#AUTH_COOKIE_NAME}.
+	 */
+	public static void expireLegacyCookies(HttpServletRequest request, HttpServletResponse response) {
+		expireCookies(request, response, false);
+	}
+
+	private static void expireCookies(HttpServletRequest request, HttpServletResponse response, boolean stable) {
 		Cookie[] cookies = request.getCookies();
 		if (cookies != null) {
 			for (Cookie cookie : cookies) {
-				if (cookie.getName().startsWith(AuthenticationServlet.AUTH_COOKIE_NAME)) {
+				String name = cookie.getName();
+				if (name.startsWith(AuthenticationServlet.AUTH_COOKIE_NAME)
+						&& (stable || name.length() > AuthenticationServlet.AUTH_COOKIE_NAME.length())) {
 					cookie.setMaxAge(0);
 					cookie.setValue(null);
 					cookie.setPath(AuthenticationServlet.generateCookiePath(request));
@@ -112,36 +146,169 @@ public class AuthenticationFilter implements Filter {
 		}
 	}
 
-	protected Credential renew(Credential credential, HttpServletRequest request, HttpServletResponse response)
+	/**
+	 * With {@link Configuration#isStableCookieName()}, replaces the <code>auth&lt;millis&gt;</code> cookies of the
+	 * request by a single {@link AuthenticationServlet#AUTH_COOKIE_NAME} cookie with the same token, so the browser
+	 * stops sending them. The stable cookie is only created when the token was read from one of those cookies, never
+	 * for a token that came in a header or in the URL. Requests that only carry the stable cookie cost a scan of the
+	 * cookies.
+	 */
+	protected void migrateCookies(HttpServletRequest request, HttpServletResponse response, String token) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies == null) {
+			return;
+		}
+
+		boolean stable = false;
+		boolean legacy = false;
+		boolean fromLegacy = false;
+		for (Cookie cookie : cookies) {
+			String name = cookie.getName();
+			if (name.equals(AuthenticationServlet.AUTH_COOKIE_NAME)) {
+				stable = true;
+			} else if (name.startsWith(AuthenticationServlet.AUTH_COOKIE_NAME)) {
+				legacy = true;
+				if (!fromLegacy && cookie.getValue() != null) {
+					fromLegacy = token.equals(decode(cookie.getValue()));
+				}
+			}
+		}
+
+		if (stable) {
+			if (legacy) {
+				expireLegacyCookies(request, response);
+			}
+		} else if (fromLegacy) {
+			expireLegacyCookies(request, response);
+			AuthenticationServlet.createAuthCookie(AuthenticationServlet.AUTH_COOKIE_NAME, token, request, response,
+					configuration.getCookieExpiryTimeout());
+		}
+	}
+
+	protected Credential renew(final Credential credential, HttpServletRequest request, HttpServletResponse response)
 			throws ParseException {
-		credential = credential.renew();
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		long start = metrics.start();
+		boolean renewed = false;
+		try {
+			Credential credentialRenewed = renewAndWrite(credential, request, response);
+			renewed = true;
+			return credentialRenewed;
+		} finally {
+			metrics.record(Operation.RENEW, credential.getProvider(), renewed ? Outcome.SUCCESS : Outcome.ERROR, start);
+		}
+	}
+
+	private Credential renewAndWrite(final Credential credential, HttpServletRequest request,
+			HttpServletResponse response) {
+		Credential renewed;
+
+		RenewalCache renewalCache = configuration.getRenewalCache();
+		if (renewalCache == null || credential.getToken() == null) {
+			renewed = renewCredential(credential);
+		} else {
+			try {
+				renewed = renewalCache.renew(credential.getToken(), new Callable<Credential>() {
+					@Override
+					public Credential call() {
+						return renewCredential(credential);
+					}
+				});
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		logger.info("Authentication token renew to : {}", renewed);
+
+		writeRenewedToken(renewed, request, response);
+
+		return renewed;
+	}
 
-		String signature = AuthenticationUtil.sign(credential, configuration.getCertificateRepository());
+	/**
+	 * Hands the renewed token back the way the token came: in a cookie for the tokens read from the cookies or the
+	 * request parameters, in the {@link #RENEWED_TOKEN_HEADER} for the ones read from the <code>Authorization</code>
+	 * header or the query string, whose clients would not send a cookie back.
+	 */
+	protected void writeRenewedToken(Credential renewed, HttpServletRequest request, HttpServletResponse response) {
+		if (renewsCookie(request)) {
+			AuthenticationServlet.createAuthCookie(AuthenticationServlet.generateCookieName(configuration), renewed
+					.toStringFull(), request, response, configuration.getCookieExpiryTimeout());
+		} else {
+			response.setHeader(RENEWED_TOKEN_HEADER, renewed.toStringFull());
+		}
+	}
+
+	/**
+	 * Tokens of an unknown source, read by an overridden {@link #extractAuthTokenFrom(HttpServletRequest)}, are
+	 * renewed in a cookie as they always were.
+	 */
+	private static boolean renewsCookie(HttpServletRequest request) {
+		Object source = request.getAttribute(TOKEN_SOURCE_ATTRIBUTE);
+		return source != TokenSource.HEADER && source != TokenSource.QUERY;
+	}
 
-		logger.info("Authentication token renew to : {}", credential);
+	/**
+	 * Creates and signs the credential that replaces the given one. Called once per token during the window of the
+	 * {@link Configuration#getRenewalCache()}.
+	 */
+	protected Credential renewCredential(Credential credential) {
+		Credential renewed = credential.renew();
+		renewed.setFormat(configuration.getTokenFormat());
+		if (configuration.isCompactTimestamps()) {
+			renewed.useCompactTimestamp();
+		}
 
-		credential.setSignature(signature);
-		AuthenticationServlet.createAuthCookie(credential.toStringFull(), request, response,
-				configuration.getCookieExpiryTimeout());
+		renewed.setSignature(AuthenticationUtil.sign(renewed, configuration));
 
-		return credential;
+		return renewed;
 	}
 
 	protected boolean mustRenew(Credential auth) {
-		final long today = getToday().getTime();
-		final long timeout = configuration.getRenewTimeout();
-		final long time = auth.getTimestamp().getTime();
+		final long today = currentTime();
+		final long timeout = configuration.getRenewTimeout() - renewJitterFor(auth);
+		final long time = auth.getTimestampMillis();
 		return today - timeout > time;
 	}
 
-	protected Date getToday() {
-		return new Date();
+	/**
+	 * @return How much earlier than the renew timeout the credential is renewed, between zero and
+	 *         {@link Configuration#getRenewJitter()}, always the same for the same credential.
+	 */
+	protected long renewJitterFor(Credential auth) {
+		final long jitter = configuration.getRenewJitter();
+		if (jitter <= 0) {
+			return 0;
+		}
+
+		long hash = auth.getTimestampMillis() * 31 + auth.getUsername().hashCode();
+		hash = hash * 31 + auth.getProvider().hashCode();
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return (hash >>> 1) % (jitter + 1);
+	}
+
+	/**
+	 * The clock used to check expiry and renewal, in epoch milliseconds. It replaces the
+	 * <code>getToday()</code> hook, which was removed so that subclasses still overriding it fail to compile instead
+	 * of silently losing their clock.
+	 */
+	protected long currentTime() {
+		return System.currentTimeMillis();
 	}
 
 	protected boolean expired(Credential credential) {
-		final long today = getToday().getTime();
+		final long today = currentTime();
 		final long timeout = configuration.getExpiryTimeout();
-		final long time = credential.getTimestamp().getTime();
+		final long time = credential.getTimestampMillis();
 		return today - timeout > time;
 	}
 
@@ -154,6 +321,14 @@ public class AuthenticationFilter implements Filter {
 	}
 
 	protected Credential processAndValidate(String token) throws InvalidAuthTokenException, ExpiredAuthTokenException {
+		VerifiedTokenCache cache = configuration.getVerifiedTokenCache();
+		if (cache != null) {
+			Credential credential = cache.get(token);
+			if (credential != null && allowProvider(credential.getProvider()) && !expired(credential)) {
+				return credential;
+			}
+		}
+
 		try {
 			Credential credential = Credential.parse(token);
 
@@ -166,14 +341,18 @@ public class AuthenticationFilter implements Filter {
 				throw new ExpiredAuthTokenException(credential);
 			}
 
-			if (AuthenticationUtil.verify(credential, credential.getSignature(),
-					configuration.getCertificateRepository())) {
+			if (AuthenticationUtil.verify(credential, configuration)) {
+				if (cache != null) {
+					cache.put(token, credential, credential.getTimestampMillis() + configuration.getExpiryTimeout());
+				}
 				return credential;
 			} else {
 				throw new InvalidAuthTokenException(credential);
 			}
 		} catch (TimestampParsingException e) {
 			throw new InvalidAuthTokenException(e, token);
+		} catch (MalformedAuthTokenException e) {
+			throw new InvalidAuthTokenException(e, token);
 		}
 	}
 
@@ -190,41 +369,115 @@ public class AuthenticationFilter implements Filter {
 		configuration.getAuthenticationExpiredHandler().sendResponse(req, resp);
 	}
 
+	/**
+	 * URL decodes the token, keeping the <code>+</code> of the base64 signatures. Tokens without <code>%</code> or
+	 * spaces, as they usually are, are returned as they are.
+	 */
 	protected String decode(String token) {
-		try {
-			String decodedToken = URLDecoder.decode(token, "UTF-8");
-
-			decodedToken = decodedToken.replaceAll(" ", "+");
+		if (token.indexOf('%') < 0) {
+			return token.indexOf(' ') < 0 ? token : token.replace(' ', '+');
+		}
 
-			return decodedToken;
+		try {
+			return URLDecoder.decode(token, "UTF-8").replace(' ', '+');
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * @return The first token found on the {@link Configuration#getTokenSources()}. Its source is kept in the
+	 *         {@link #TOKEN_SOURCE_ATTRIBUTE} of the request.
+	 */
 	protected String extractAuthTokenFrom(HttpServletRequest request) {
-		String authToken = request.getParameter(AUTH_REQUEST_PARAMETER);
-		if (authToken != null) {
-			return decode(authToken);
+		for (TokenSource source : configuration.getTokenSources()) {
+			String token;
+			switch (source) {
+			case HEADER:
+				token = extractAuthTokenFromHeader(request);
+				break;
+			case COOKIE:
+				token = extractAuthTokenFromCookies(request);
+				break;
+			case QUERY:
+				token = extractAuthTokenFromQueryString(request);
+				break;
+			default:
+				token = extractAuthTokenFromParameters(request);
+				break;
+			}
+
+			if (token != null) {
+				request.setAttribute(TOKEN_SOURCE_ATTRIBUTE, source);
+				return token;
+			}
 		}
+		return null;
+	}
+
+	protected String extractAuthTokenFromHeader(HttpServletRequest request) {
+		String authorization = request.getHeader(AUTHORIZATION_HEADER);
+		if (authorization != null && authorization.regionMatches(true, 0, BEARER_SCHEME, 0, BEARER_SCHEME.length())) {
+			String token = authorization.substring(BEARER_SCHEME.length()).trim();
+			return token.length() > 0 ? token : null;
+		}
+		return null;
+	}
 
-		Set<Cookie> cookiesFound = new TreeSet<Cookie>(cookieComparator);
+	/**
+	 * @return The value of the <code>auth*</code> cookie with the greatest name, the latest one created by
+	 *         {@link AuthenticationServlet#generateCookieName()}. With {@link Configuration#isStableCookieName()} the
+	 *         {@link AuthenticationServlet#AUTH_COOKIE_NAME} cookie is taken first.
+	 */
+	protected String extractAuthTokenFromCookies(HttpServletRequest request) {
+		Cookie latest = null;
+		boolean stableName = configuration.isStableCookieName();
 
 		Cookie[] cookies = request.getCookies();
 		if (cookies != null) {
 			for (Cookie cookie : cookies) {
-				if (cookie.getName().startsWith(AuthenticationServlet.AUTH_COOKIE_NAME)) {
-					cookiesFound.add(cookie);
+				String name = cookie.getName();
+				if (!name.startsWith(AuthenticationServlet.AUTH_COOKIE_NAME)) {
+					continue;
+				}
+				if (stableName && name.length() == AuthenticationServlet.AUTH_COOKIE_NAME.length()) {
+					latest = cookie;
+					break;
+				}
+				if (latest == null || name.compareTo(latest.getName()) > 0) {
+					latest = cookie;
 				}
 			}
 		}
 
-		if (cookiesFound.size() > 0) {
-			Cookie cookie = cookiesFound.iterator().next();
-			return decode(cookie.getValue());
-		} else {
+		return latest == null ? null : decode(latest.getValue());
+	}
+
+	protected String extractAuthTokenFromQueryString(HttpServletRequest request) {
+		String query = request.getQueryString();
+		if (query == null) {
 			return null;
 		}
+
+		int start = 0;
+		while (start < query.length()) {
+			int end = query.indexOf('&', start);
+			if (end < 0) {
+				end = query.length();
+			}
+
+			if (query.startsWith(AUTH_REQUEST_PARAMETER, start)
+					&& query.startsWith("=", start + AUTH_REQUEST_PARAMETER.length())) {
+				return decode(query.substring(start + AUTH_REQUEST_PARAMETER.length() + 1, end));
+			}
+			start = end + 1;
+		}
+		return null;
+	}
+
+	protected String extractAuthTokenFromParameters(HttpServletRequest request) {
+		String authToken = request.getParameter(AUTH_REQUEST_PARAMETER);
+		return authToken == null ? null : decode(authToken);
 	}
 
 	@Override
@@ -234,9 +487,8 @@ public class AuthenticationFilter implements Filter {
 			path = config.getServletContext().getInitParameter(Configuration.CONFIGURATION_FILE_KEY);
 		}
 
-		this.configuration = Configuration.buildFromFile(getClassLoaderForConfiguration(), path);
-
-		logger.info("Configuration loaded : {}", configuration);
+		this.registry = ConfigurationRegistry.get(config.getServletContext());
+		this.configuration = registry.acquire(getClassLoaderForConfiguration(), path);
 	}
 
 	protected ClassLoader getClassLoaderForConfiguration() {
@@ -245,6 +497,12 @@ public class AuthenticationFilter implements Filter {
 
 	@Override
 	public void destroy() {
+		if (registry != null) {
+			registry.release(configuration);
+			registry = null;
+		} else if (configuration != null) {
+			configuration.destroy();
+		}
 	}
 
 	public Configuration getConfiguration() {
@@ -13,6 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import br.com.dextra.security.configuration.Configuration;
+import br.com.dextra.security.configuration.ConfigurationRegistry;
 import br.com.dextra.security.exceptions.AuthenticationFailedException;
 import br.com.dextra.security.utils.AuthenticationUtil;
 
@@ -38,6 +39,7 @@ public abstract class AuthenticationServlet extends HttpServlet {
 	public static final String AUTH_COOKIE_NAME = "auth";
 
 	protected Configuration configuration;
+	private transient ConfigurationRegistry registry;
 
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -56,13 +58,23 @@ public abstract class AuthenticationServlet extends HttpServlet {
 			path = config.getServletContext().getInitParameter(Configuration.CONFIGURATION_FILE_KEY);
 		}
 
-		this.configuration = Configuration.buildFromFile(getClassLoaderForConfiguration(), path);
-
-		logger.info("Configuration loaded : {}", configuration);
+		this.registry = ConfigurationRegistry.get(config.getServletContext());
+		this.configuration = registry.acquire(getClassLoaderForConfiguration(), path);
 
 		super.init(config);
 	}
 
+	@Override
+	public void destroy() {
+		if (registry != null) {
+			registry.release(configuration);
+			registry = null;
+		} else if (configuration != null) {
+			configuration.destroy();
+		}
+		super.destroy();
+	}
+
 	protected ClassLoader getClassLoaderForConfiguration() {
 		return getClass().getClassLoader();
 	}
@@ -74,6 +86,10 @@ public abstract class AuthenticationServlet extends HttpServlet {
 
 		try {
 			Credential credential = authenticate(req);
+			credential.setFormat(configuration.getTokenFormat());
+			if (configuration.isCompactTimestamps()) {
+				credential.useCompactTimestamp();
+			}
 			String token = credential.toString();
 
 			logger.info("User authenticated as {}", token);
@@ -82,7 +98,11 @@ public abstract class AuthenticationServlet extends HttpServlet {
 			credential.setSignature(signature);
 			CredentialHolder.register(credential);
 
-			createAuthCookie(credential.toStringFull(), req, resp, configuration.getCookieExpiryTimeout());
+			if (configuration.isStableCookieName()) {
+				AuthenticationFilter.expireLegacyCookies(req, resp);
+			}
+			createAuthCookie(generateCookieName(configuration), credential.toStringFull(), req, resp, configuration
+					.getCookieExpiryTimeout());
 
 			sendSuccess(token, req, resp);
 		} catch (AuthenticationFailedException e) {
@@ -94,6 +114,9 @@ public abstract class AuthenticationServlet extends HttpServlet {
 	private void clearCachesIfRequestParameter(HttpServletRequest req) {
 		if (req.getParameter(CLEAR_CERTIFICATE_REPOSITORY_CACHE_KEY) != null) {
 			configuration.getCertificateRepository().clearCaches();
+			if (configuration.getVerifiedTokenCache() != null) {
+				configuration.getVerifiedTokenCache().clear();
+			}
 		}
 	}
 
@@ -112,7 +135,12 @@ public abstract class AuthenticationServlet extends HttpServlet {
 
 	public static void createAuthCookie(String token, HttpServletRequest req, HttpServletResponse resp,
 			int cookieExpiryTimeout) {
-		Cookie authCookie = new Cookie(generateCookieName(), token);
+		createAuthCookie(generateCookieName(), token, req, resp, cookieExpiryTimeout);
+	}
+
+	public static void createAuthCookie(String name, String token, HttpServletRequest req, HttpServletResponse resp,
+			int cookieExpiryTimeout) {
+		Cookie authCookie = new Cookie(name, token);
 
 		String path = generateCookiePath(req);
 
@@ -136,8 +164,15 @@ public abstract class AuthenticationServlet extends HttpServlet {
 		return AUTH_COOKIE_NAME + System.currentTimeMillis();
 	}
 
+	/**
+	 * @return {@link #AUTH_COOKIE_NAME} with {@link Configuration#isStableCookieName()}, a new name otherwise.
+	 */
+	public static String generateCookieName(Configuration configuration) {
+		return configuration.isStableCookieName() ? AUTH_COOKIE_NAME : generateCookieName();
+	}
+
 	protected String generateAuthenticationDataString(Credential credential) {
-		return AuthenticationUtil.sign(credential, configuration.getCertificateRepository());
+		return AuthenticationUtil.sign(credential, configuration);
 	}
 
 	public Configuration getConfiguration() {
@@ -0,0 +1,253 @@
+package br.com.dextra.security;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import br.com.dextra.security.cache.VerifiedTokenCache;
+import br.com.dextra.security.configuration.Configuration;
+import br.com.dextra.security.exceptions.MalformedAuthTokenException;
+import br.com.dextra.security.exceptions.TimestampParsingException;
+import br.com.dextra.security.utils.AuthenticationUtil;
+
+/**
+ * Validates many tokens at once, as the {@link AuthenticationFilter} does for one: parse, allowed provider, expiry and
+ * signature. The tokens are split among the threads of a {@link ForkJoinPool} and each one gets a {@link Result}, in
+ * the order they were given; nothing is thrown for an invalid token. Repeated tokens are verified once and the
+ * {@link Configuration#getVerifiedTokenCache()} is used if enabled.
+ * <p>
+ * The verifiers of {@link AuthenticationUtil#getSignatureEngine()} are kept per thread, so a verifier should be kept
+ * and reused, or given a long lived pool, instead of created for each batch.
+ * <p>
+ * Each signature is still verified on its own. None of the supported algorithms (DSA, ECDSA, Ed25519 and HMAC) has a
+ * batch verification in the JCA providers; batch Ed25519 verification would need a library of its own and only checks
+ * that the whole batch is valid, so the bad tokens would have to be found one by one anyway. The gain comes from the
+ * parallelism, the reused engines and public keys and the verified token cache.
+ */
+public class BatchVerifier implements Closeable {
+
+	/**
+	 * How many tokens a task verifies without splitting them further.
+	 */
+	public static final int DEFAULT_THRESHOLD = 16;
+
+	public enum Status {
+		VALID, MALFORMED, PROVIDER_NOT_ALLOWED, EXPIRED, INVALID_SIGNATURE, ERROR
+	}
+
+	public static class Result {
+
+		private final String token;
+		private final Status status;
+		private final Credential credential;
+		private final Throwable error;
+
+		Result(String token, Status status, Credential credential, Throwable error) {
+			this.token = token;
+			this.status = status;
+			this.credential = credential;
+			this.error = error;
+		}
+
+		public String getToken() {
+			return token;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public boolean isValid() {
+			return status == Status.VALID;
+		}
+
+		/**
+		 * @return The parsed credential, <code>null</code> when the token could not be parsed.
+		 */
+		public Credential getCredential() {
+			return credential;
+		}
+
+		/**
+		 * @return What went wrong on {@link Status#MALFORMED} and {@link Status#ERROR} tokens.
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return "Result [status=" + status + ", credential=" + credential + "]";
+		}
+	}
+
+	private final Configuration configuration;
+	private final ForkJoinPool pool;
+	private final boolean ownPool;
+	private int threshold = DEFAULT_THRESHOLD;
+
+	/**
+	 * Verifies on a pool of its own, with one thread per processor, shut down by {@link #close()}.
+	 */
+	public BatchVerifier(Configuration configuration) {
+		this(configuration, new ForkJoinPool(), true);
+	}
+
+	public BatchVerifier(Configuration configuration, ForkJoinPool pool) {
+		this(configuration, pool, false);
+	}
+
+	private BatchVerifier(Configuration configuration, ForkJoinPool pool, boolean ownPool) {
+		this.configuration = configuration;
+		this.pool = pool;
+		this.ownPool = ownPool;
+	}
+
+	public List<Result> verify(Collection<String> tokens) {
+		String[] unique = new String[tokens.size()];
+		int[] indexes = new int[tokens.size()];
+		int count = 0;
+
+		Map<String, Integer> seen = new HashMap<String, Integer>();
+		int i = 0;
+		for (String token : tokens) {
+			Integer index = seen.get(token);
+			if (index == null) {
+				index = count;
+				seen.put(token, index);
+				unique[count++] = token;
+			}
+			indexes[i++] = index;
+		}
+
+		Result[] verified = new Result[count];
+		pool.invoke(new VerifyTask(Arrays.copyOf(unique, count), verified, 0, count, currentTime()));
+
+		List<Result> results = new ArrayList<Result>(indexes.length);
+		for (int index : indexes) {
+			results.add(verified[index]);
+		}
+		return Collections.unmodifiableList(results);
+	}
+
+	public Result verify(String token) {
+		return verify(token, currentTime());
+	}
+
+	protected Result verify(String token, long now) {
+		if (token == null) {
+			return new Result(token, Status.MALFORMED, null, null);
+		}
+
+		VerifiedTokenCache cache = configuration.getVerifiedTokenCache();
+		if (cache != null) {
+			Credential credential = cache.get(token);
+			if (credential != null && allowProvider(credential.getProvider()) && !expired(credential, now)) {
+				return new Result(token, Status.VALID, credential, null);
+			}
+		}
+
+		Credential credential;
+		try {
+			credential = Credential.parse(token);
+		} catch (TimestampParsingException e) {
+			return new Result(token, Status.MALFORMED, null, e);
+		} catch (MalformedAuthTokenException e) {
+			return new Result(token, Status.MALFORMED, null, e);
+		} catch (RuntimeException e) {
+			return new Result(token, Status.ERROR, null, e);
+		}
+
+		try {
+			String provider = credential.getProvider();
+			if (provider == null || !allowProvider(provider)) {
+				return new Result(token, Status.PROVIDER_NOT_ALLOWED, credential, null);
+			}
+
+			if (expired(credential, now)) {
+				return new Result(token, Status.EXPIRED, credential, null);
+			}
+
+			if (!AuthenticationUtil.verify(credential, configuration)) {
+				return new Result(token, Status.INVALID_SIGNATURE, credential, null);
+			}
+
+			if (cache != null) {
+				cache.put(token, credential, credential.getTimestampMillis() + configuration.getExpiryTimeout());
+			}
+			return new Result(token, Status.VALID, credential, null);
+		} catch (RuntimeException e) {
+			return new Result(token, Status.ERROR, credential, e);
+		}
+	}
+
+	private boolean allowProvider(String provider) {
+		return configuration.getAllowedProviders().contains(provider);
+	}
+
+	private boolean expired(Credential credential, long now) {
+		return now - configuration.getExpiryTimeout() > credential.getTimestampMillis();
+	}
+
+	protected long currentTime() {
+		return System.currentTimeMillis();
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	public void setThreshold(int threshold) {
+		this.threshold = Math.max(1, threshold);
+	}
+
+	/**
+	 * Shuts down the pool, if it was created by this verifier.
+	 */
+	@Override
+	public void close() {
+		if (ownPool) {
+			pool.shutdown();
+		}
+	}
+
+	private class VerifyTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 4711863271837046715L;
+
+		private final String[] tokens;
+		private final Result[] results;
+		private final int from;
+		private final int to;
+		private final long now;
+
+		VerifyTask(String[] tokens, Result[] results, int from, int to, long now) {
+			this.tokens = tokens;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.now = now;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				for (int i = from; i < to; i++) {
+					results[i] = verify(tokens[i], now);
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new VerifyTask(tokens, results, from, middle, now), new VerifyTask(tokens, results, middle, to,
+					now));
+		}
+	}
+}
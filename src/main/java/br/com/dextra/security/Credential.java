@@ -1,27 +1,54 @@
 package br.com.dextra.security;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.text.MessageFormat;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Date;
 
+import org.apache.commons.codec.binary.Base64;
+
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import br.com.dextra.security.exceptions.MalformedAuthTokenException;
+import br.com.dextra.security.exceptions.SecurityException;
 import br.com.dextra.security.exceptions.TimestampParsingException;
+import br.com.dextra.security.metrics.MetricsRegistry;
+import br.com.dextra.security.metrics.Operation;
+import br.com.dextra.security.metrics.Outcome;
+import br.com.dextra.security.utils.KeyIdUtil;
+import br.com.dextra.security.utils.SignatureEncodingUtil;
+import br.com.dextra.security.utils.TimestampCodec;
 
 public class Credential implements Serializable {
 
 	private static final long serialVersionUID = 4913986898213824694L;
 
+	/**
+	 * @deprecated The timestamps are handled by {@link TimestampCodec}. This formatter is kept for compatibility only.
+	 */
+	@Deprecated
 	protected static final DateTimeFormatter dateFormat = DateTimeFormat.forPattern("yyyyMMdd.HHmmssSSS");
 
+	private static final char SEPARATOR = '|';
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	private String username;
 	private String provider;
-	private Date timestamp;
+	private long timestampMillis;
 	private String timestampAsString;
+	private TokenFormat format = TokenFormat.V1;
 
 	private transient String signature;
+	private transient String keyId;
+	private transient SignatureScheme signatureScheme;
+	private transient volatile byte[] rawSignature;
 	private transient String token;
+	private transient String signedPayload;
+	private transient byte[] signedData;
 
 	public Credential(String username, String provider) {
 		super();
@@ -36,45 +63,134 @@ public class Credential implements Serializable {
 		this.signature = signature;
 		this.token = token;
 
-		setTimestamp(parseDate(timestamp), timestamp);
+		setTimestamp(parseTimestamp(timestamp), timestamp);
+	}
+
+	private Credential(String username, String provider, long timestamp, String keyId, SignatureScheme scheme,
+			byte[] rawSignature, String token) {
+		this.username = username;
+		this.provider = provider;
+		this.timestampMillis = timestamp;
+		this.keyId = keyId;
+		this.signatureScheme = scheme;
+		this.rawSignature = rawSignature;
+		this.token = token;
+		this.format = TokenFormat.V2;
 	}
 
-	protected Date parseDate(String timestamp) {
+	protected long parseTimestamp(String timestamp) {
 		try {
-			return dateFormat.parseDateTime(timestamp).toDate();
+			return TimestampCodec.parse(timestamp);
 		} catch (Exception e) {
 			throw new TimestampParsingException(timestamp, e);
 		}
 	}
 
 	protected void setTimestamp() {
-		Date date = getToday();
-		setTimestamp(date, dateFormat.print(date.getTime()));
+		long millis = currentTime();
+		setTimestamp(millis, TimestampCodec.format(millis));
 	}
 
-	protected Date getToday() {
-		return new Date();
+	/**
+	 * The clock used to set the timestamp, in epoch milliseconds. It replaces the
+	 * <code>getToday()</code> hook, which was removed so that subclasses still overriding it fail to compile instead
+	 * of silently losing their clock.
+	 */
+	protected long currentTime() {
+		return System.currentTimeMillis();
 	}
 
-	protected void setTimestamp(Date date, String timestamp) {
-		this.timestamp = date;
+	protected void setTimestamp(long millis, String timestamp) {
+		this.timestampMillis = millis;
 		this.timestampAsString = timestamp;
+		this.signedPayload = null;
+		this.signedData = null;
+	}
+
+	/**
+	 * Re-encodes the timestamp of a credential that is about to be signed with the compact encoding of
+	 * {@link TimestampCodec}. The signature, if any, is discarded.
+	 */
+	public void useCompactTimestamp() {
+		setTimestamp(timestampMillis, TimestampCodec.formatCompact(timestampMillis));
+		setSignature(null);
+	}
+
+	public TokenFormat getFormat() {
+		return format == null ? TokenFormat.V1 : format;
+	}
+
+	/**
+	 * Changes the format of a credential that is about to be signed. The signature, if any, is discarded, since the
+	 * signed data depends on the format.
+	 */
+	public void setFormat(TokenFormat format) {
+		if (getFormat() != format) {
+			this.format = format;
+			this.signedData = null;
+			setSignature(null);
+		}
 	}
 
 	public String getToken() {
 		return token;
 	}
 
+	/**
+	 * The signature as written on {@link TokenFormat#V1} tokens: Base64, marked with the scheme and the key id. Parsed
+	 * {@link TokenFormat#V2} credentials only build it when asked for, as they are verified with
+	 * {@link #getRawSignature()}.
+	 */
 	protected String getSignature() {
+		if (signature == null) {
+			byte[] raw = rawSignature;
+			if (raw != null) {
+				signature = KeyIdUtil.mark(keyId, signatureScheme.mark(new String(SignatureEncodingUtil.encode(raw))));
+			}
+		}
 		return signature;
 	}
 
+	/**
+	 * The decoded bytes of the signature, <code>null</code> if the credential is not signed. The array is not copied
+	 * and must not be modified.
+	 */
+	public byte[] getRawSignature() {
+		byte[] raw = rawSignature;
+		if (raw == null && signature != null) {
+			String unmarked = KeyIdUtil.unmark(signature);
+			keyId = KeyIdUtil.keyIdOf(signature);
+			signatureScheme = SignatureScheme.of(unmarked);
+			raw = SignatureEncodingUtil.decode(signatureScheme.unmark(unmarked));
+			rawSignature = raw;
+		}
+		return raw;
+	}
+
+	/**
+	 * @return The scheme of the signature, <code>null</code> if the credential is not signed.
+	 */
+	public SignatureScheme getSignatureScheme() {
+		return getRawSignature() == null ? null : signatureScheme;
+	}
+
+	/**
+	 * @return The id of the key that made the signature, <code>null</code> if it names none.
+	 */
+	public String getKeyId() {
+		return getRawSignature() == null ? null : keyId;
+	}
+
 	public String getUsername() {
 		return username;
 	}
 
 	public Date getTimestamp() {
-		return timestamp;
+		return new Date(timestampMillis);
+	}
+
+	public long getTimestampMillis() {
+		return timestampMillis;
 	}
 
 	public String getProvider() {
@@ -83,15 +199,55 @@ public class Credential implements Serializable {
 
 	public void setSignature(String signature) {
 		this.signature = signature;
+		this.rawSignature = null;
+		this.keyId = null;
+		this.signatureScheme = null;
 	}
 
+	/**
+	 * The signed part of the token: <code>username|provider|timestamp</code>. Parsed credentials return the
+	 * corresponding substring of the original token, so nothing is rebuilt to verify them.
+	 */
 	@Override
 	public String toString() {
-		return MessageFormat.format("{0}|{1}|{2}", username, provider, timestampAsString);
+		if (signedPayload == null) {
+			StringBuilder sb = new StringBuilder(64);
+			sb.append(username).append(SEPARATOR).append(provider).append(SEPARATOR).append(getTimestampAsString());
+			signedPayload = sb.toString();
+		}
+		return signedPayload;
+	}
+
+	private String getTimestampAsString() {
+		if (timestampAsString == null) {
+			timestampAsString = TimestampCodec.format(timestampMillis);
+		}
+		return timestampAsString;
+	}
+
+	/**
+	 * The bytes covered by the signature: the bytes of {@link #toString()} on {@link TokenFormat#V1} tokens, the
+	 * binary header of {@link TokenFormat#V2} tokens.
+	 */
+	public byte[] getSignedData() {
+		if (getFormat() == TokenFormat.V1) {
+			return toString().getBytes();
+		}
+		if (signedData == null) {
+			signedData = encodeHeader();
+		}
+		return signedData;
 	}
 
 	public String toStringFull() {
-		return MessageFormat.format("{0}|{1}|{2}|{3}", username, provider, timestampAsString, signature);
+		if (getFormat() == TokenFormat.V2) {
+			return encodeV2();
+		}
+
+		String payload = toString();
+		String signature = getSignature();
+		StringBuilder sb = new StringBuilder(payload.length() + 1 + (signature == null ? 4 : signature.length()));
+		return sb.append(payload).append(SEPARATOR).append(signature).toString();
 	}
 
 	public Credential renew() {
@@ -99,37 +255,195 @@ public class Credential implements Serializable {
 	}
 
 	public static Credential parse(String token) {
-		String[] tokens = splitTokens(token);
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		long start = metrics.start();
+		try {
+			Credential credential = parseToken(token);
+			metrics.record(Operation.PARSE, null, Outcome.SUCCESS, start);
+			return credential;
+		} catch (SecurityException e) {
+			metrics.record(Operation.PARSE, null, Outcome.FAILURE, start);
+			throw e;
+		} catch (RuntimeException e) {
+			metrics.record(Operation.PARSE, null, Outcome.ERROR, start);
+			throw e;
+		}
+	}
 
-		return new Credential(tokens[0], tokens[1], tokens[2], tokens[3], token);
+	private static Credential parseToken(String token) {
+		if (token.indexOf(SEPARATOR) < 0) {
+			return parseV2(token);
+		}
+
+		int usernameEnd = nextSeparator(token, 0);
+		int providerEnd = nextSeparator(token, usernameEnd + 1);
+		int timestampEnd = nextSeparator(token, providerEnd + 1);
+
+		Credential credential = new Credential(token.substring(0, usernameEnd), token.substring(usernameEnd + 1,
+				providerEnd), token.substring(providerEnd + 1, timestampEnd), fillTrailing(token
+				.substring(timestampEnd + 1)), token);
+		credential.signedPayload = token.substring(0, timestampEnd);
+
+		return credential;
 	}
 
 	public static String[] splitTokens(String token) {
-		String[] tokens = token.split("\\|");
+		if (token.indexOf(SEPARATOR) < 0) {
+			Credential credential = parseV2(token);
+			return new String[] { credential.username, credential.provider, credential.getTimestampAsString(),
+					credential.getSignature() };
+		}
 
-		return new String[] { tokens[0], tokens[1], tokens[2], fillTrailing(join(tokens, 3, tokens.length)) };
+		int usernameEnd = nextSeparator(token, 0);
+		int providerEnd = nextSeparator(token, usernameEnd + 1);
+		int timestampEnd = nextSeparator(token, providerEnd + 1);
+
+		return new String[] { token.substring(0, usernameEnd), token.substring(usernameEnd + 1, providerEnd),
+				token.substring(providerEnd + 1, timestampEnd), fillTrailing(token.substring(timestampEnd + 1)) };
 	}
 
-	private static String fillTrailing(String token) {
-		int trailingCharacters = token.length() % 4;
+	private static Credential parseV2(String token) {
+		byte[] bytes = Base64.decodeBase64(token);
+		if (bytes.length == 0 || bytes[0] != TokenFormat.V2_VERSION) {
+			throw new MalformedAuthTokenException(token);
+		}
 
-		StringBuilder sb = new StringBuilder(token);
-		for (int i = 0; i < trailingCharacters; i++) {
-			sb.append("=");
+		int[] position = { 1 };
+		String username = readField(bytes, position, token);
+		String provider = readField(bytes, position, token);
+		long timestamp = readVarLong(bytes, position, token);
+		int headerEnd = position[0];
+
+		if (headerEnd + 1 >= bytes.length) {
+			throw new MalformedAuthTokenException(token);
 		}
-		return sb.toString();
+		SignatureScheme scheme = SignatureScheme.forCode(bytes[headerEnd]);
+		if (scheme == null) {
+			throw new MalformedAuthTokenException(token);
+		}
+		position[0] = headerEnd + 1;
+		String keyId = readField(bytes, position, token);
+
+		byte[] rawSignature = new byte[bytes.length - position[0]];
+		if (rawSignature.length == 0) {
+			throw new MalformedAuthTokenException(token);
+		}
+		System.arraycopy(bytes, position[0], rawSignature, 0, rawSignature.length);
+
+		Credential credential = new Credential(username, provider, timestamp, keyId.length() == 0 ? null : keyId,
+				scheme, rawSignature, token);
+		credential.signedData = new byte[headerEnd];
+		System.arraycopy(bytes, 0, credential.signedData, 0, headerEnd);
+
+		return credential;
 	}
 
-	private static String join(String[] tokens, int start, int end) {
-		StringBuilder sb = new StringBuilder();
+	private static String readField(byte[] bytes, int[] position, String token) {
+		long length = readVarLong(bytes, position, token);
+		if (length < 0 || length > bytes.length - position[0]) {
+			throw new MalformedAuthTokenException(token);
+		}
+		String field = new String(bytes, position[0], (int) length, UTF_8);
+		position[0] += (int) length;
+		return field;
+	}
 
-		for (int i = start; i < end; i++) {
-			sb.append(tokens[i]);
-			if (i + 1 < end) {
-				sb.append("|");
+	private static long readVarLong(byte[] bytes, int[] position, String token) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position[0] >= bytes.length) {
+				throw new MalformedAuthTokenException(token);
 			}
+			byte b = bytes[position[0]++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new MalformedAuthTokenException(token);
+	}
+
+	private byte[] encodeHeader() {
+		byte[] usernameBytes = username.getBytes(UTF_8);
+		byte[] providerBytes = provider.getBytes(UTF_8);
+
+		byte[] header = new byte[1 + 5 + usernameBytes.length + 5 + providerBytes.length + 10];
+		int position = 0;
+		header[position++] = TokenFormat.V2_VERSION;
+		position = writeVarLong(header, position, usernameBytes.length);
+		System.arraycopy(usernameBytes, 0, header, position, usernameBytes.length);
+		position += usernameBytes.length;
+		position = writeVarLong(header, position, providerBytes.length);
+		System.arraycopy(providerBytes, 0, header, position, providerBytes.length);
+		position += providerBytes.length;
+		position = writeVarLong(header, position, timestampMillis);
+
+		byte[] result = new byte[position];
+		System.arraycopy(header, 0, result, 0, position);
+		return result;
+	}
+
+	private static int writeVarLong(byte[] target, int position, long value) {
+		while ((value & ~0x7FL) != 0) {
+			target[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		target[position++] = (byte) value;
+		return position;
+	}
+
+	private String encodeV2() {
+		byte[] rawSignature = getRawSignature();
+		String keyId = getKeyId();
+		SignatureScheme scheme = rawSignature == null ? SignatureScheme.ASYMMETRIC : signatureScheme;
+		if (rawSignature == null) {
+			rawSignature = new byte[0];
 		}
+		byte[] keyIdBytes = keyId == null ? new byte[0] : keyId.getBytes(UTF_8);
+		byte[] header = getSignedData();
+
+		byte[] bytes = new byte[header.length + 1 + 5 + keyIdBytes.length + rawSignature.length];
+		System.arraycopy(header, 0, bytes, 0, header.length);
+		int position = header.length;
+		bytes[position++] = (byte) scheme.getCode();
+		position = writeVarLong(bytes, position, keyIdBytes.length);
+		System.arraycopy(keyIdBytes, 0, bytes, position, keyIdBytes.length);
+		position += keyIdBytes.length;
+		System.arraycopy(rawSignature, 0, bytes, position, rawSignature.length);
+		position += rawSignature.length;
+
+		return Base64.encodeBase64URLSafeString(position == bytes.length ? bytes : Arrays.copyOf(bytes, position));
+	}
 
+	private static int nextSeparator(String token, int from) {
+		int index = token.indexOf(SEPARATOR, from);
+		if (index < 0) {
+			throw new MalformedAuthTokenException(token);
+		}
+		return index;
+	}
+
+	private static String fillTrailing(String signature) {
+		int start = signature.indexOf(KeyIdUtil.SEPARATOR) + 1;
+		if (signature.startsWith(SignatureScheme.HMAC.getMarker(), start)) {
+			start += SignatureScheme.HMAC.getMarker().length();
+		}
+		int trailingCharacters = (4 - (signature.length() - start) % 4) % 4;
+		if (trailingCharacters == 0) {
+			return signature;
+		}
+
+		StringBuilder sb = new StringBuilder(signature.length() + trailingCharacters).append(signature);
+		for (int i = 0; i < trailingCharacters; i++) {
+			sb.append('=');
+		}
 		return sb.toString();
 	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (timestampMillis == 0 && timestampAsString != null) {
+			timestampMillis = parseTimestamp(timestampAsString);
+		}
+	}
 }
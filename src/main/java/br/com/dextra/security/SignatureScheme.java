@@ -0,0 +1,60 @@
+package br.com.dextra.security;
+
+/**
+ * How the signature of a token was produced. The scheme is marked by a prefix on the signature segment of the token,
+ * so it can be known without trying each verification. Asymmetric signatures carry no prefix, which keeps the tokens
+ * issued before the schemes existed valid.
+ */
+public enum SignatureScheme {
+
+	ASYMMETRIC("", 0),
+
+	/**
+	 * HMAC-SHA256 over the token, keyed with the secret of the application. Only used on tokens issued and verified
+	 * by the same provider.
+	 */
+	HMAC("~", 1);
+
+	private final String marker;
+	private final int code;
+
+	private SignatureScheme(String marker, int code) {
+		this.marker = marker;
+		this.code = code;
+	}
+
+	/**
+	 * The identifier of the scheme on binary tokens, see {@link TokenFormat#V2}.
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	public String getMarker() {
+		return marker;
+	}
+
+	public String mark(String encodedSignature) {
+		return marker + encodedSignature;
+	}
+
+	public String unmark(String signature) {
+		return signature.substring(marker.length());
+	}
+
+	public static SignatureScheme forCode(int code) {
+		for (SignatureScheme scheme : values()) {
+			if (scheme.code == code) {
+				return scheme;
+			}
+		}
+		return null;
+	}
+
+	public static SignatureScheme of(String signature) {
+		if (signature != null && signature.startsWith(HMAC.marker)) {
+			return HMAC;
+		}
+		return ASYMMETRIC;
+	}
+}
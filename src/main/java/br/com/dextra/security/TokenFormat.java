@@ -0,0 +1,30 @@
+package br.com.dextra.security;
+
+/**
+ * How a {@link Credential} is written on the token. Both formats are always accepted when parsing, the format of the
+ * issued tokens is chosen by {@link br.com.dextra.security.configuration.Configuration#setTokenFormat(TokenFormat)}.
+ */
+public enum TokenFormat {
+
+	/**
+	 * The text token <code>username|provider|timestamp|signature</code>, with the signature in standard Base64.
+	 */
+	V1,
+
+	/**
+	 * A binary token written in URL safe Base64 without padding, so it never needs URL decoding. The layout is:
+	 * <ul>
+	 * <li>1 byte with the version, <code>2</code>;</li>
+	 * <li>the username and the provider, each as its length followed by its UTF-8 bytes;</li>
+	 * <li>the timestamp in epoch milliseconds;</li>
+	 * <li>1 byte with the {@link SignatureScheme#getCode()} of the signature;</li>
+	 * <li>the key id of the signature, as its length followed by its UTF-8 bytes, empty if there is none;</li>
+	 * <li>the raw signature, up to the end of the token.</li>
+	 * </ul>
+	 * Lengths and the timestamp are unsigned varints (7 bits per byte, least significant group first). Everything
+	 * before the scheme is the signed data.
+	 */
+	V2;
+
+	public static final int V2_VERSION = 2;
+}
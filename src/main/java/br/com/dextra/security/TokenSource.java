@@ -0,0 +1,28 @@
+package br.com.dextra.security;
+
+/**
+ * Where the {@link AuthenticationFilter} looks for the token, in the order given by
+ * {@link br.com.dextra.security.configuration.Configuration#getTokenSources()}.
+ */
+public enum TokenSource {
+
+	/**
+	 * The <code>Authorization: Bearer &lt;token&gt;</code> header.
+	 */
+	HEADER,
+
+	/**
+	 * The <code>auth</code> cookies.
+	 */
+	COOKIE,
+
+	/**
+	 * The <code>auth</code> parameter of the query string, read without parsing the body of the request.
+	 */
+	QUERY,
+
+	/**
+	 * The <code>auth</code> request parameter, which makes the container read and parse the body of form posts.
+	 */
+	PARAMETER;
+}
@@ -0,0 +1,175 @@
+package br.com.dextra.security.cache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+
+/**
+ * Base of the caches whose entries expire at a given time. Values are softly referenced, so the garbage collector may
+ * reclaim them under memory pressure. When the cache is full the expired entries are dropped first and then arbitrary
+ * entries until it is back to 90% of its maximum size.
+ * <p>
+ * The size is checked before each put, so threads putting at the same time may each add one entry past the maximum
+ * before the next put evicts them.
+ */
+public abstract class BoundedExpiringCache<K, V> {
+
+	private final int maximumSize;
+	private final int targetSize;
+
+	private final ConcurrentMap<K, CacheEntry<K, V>> entries = new ConcurrentHashMap<K, CacheEntry<K, V>>();
+	private final ReferenceQueue<V> collected = new ReferenceQueue<V>();
+	private final Lock evictionLock = new ReentrantLock();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param name How the cache is called on configuration errors.
+	 */
+	protected BoundedExpiringCache(int maximumSize, String name) {
+		if (maximumSize <= 0) {
+			throw new ConfigurationException("The maximum size of the " + name + " must be positive.");
+		}
+		this.maximumSize = maximumSize;
+		this.targetSize = Math.max(1, maximumSize - maximumSize / 10);
+	}
+
+	protected V get(K key) {
+		purgeCollected();
+
+		CacheEntry<K, V> entry = entries.get(key);
+		if (entry != null) {
+			V value = entry.get();
+			if (value != null && entry.expiresAt > currentTime()) {
+				hits.incrementAndGet();
+				return value;
+			}
+			entries.remove(key, entry);
+		}
+
+		misses.incrementAndGet();
+		return null;
+	}
+
+	protected void put(K key, V value, long expiresAt) {
+		if (expiresAt <= currentTime()) {
+			return;
+		}
+
+		purgeCollected();
+
+		if (entries.size() >= maximumSize) {
+			evict();
+		}
+
+		entries.put(key, new CacheEntry<K, V>(key, value, expiresAt, collected));
+	}
+
+	public void invalidate(K key) {
+		entries.remove(key);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long requestCount = hitCount + misses.get();
+		return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+	}
+
+	protected long currentTime() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Waits for an eviction already running instead of skipping it, so the cache does not keep growing while one
+	 * thread scans the entries.
+	 */
+	private void evict() {
+		evictionLock.lock();
+		try {
+			if (entries.size() < maximumSize) {
+				return;
+			}
+
+			long now = currentTime();
+			Iterator<Entry<K, CacheEntry<K, V>>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				CacheEntry<K, V> entry = iterator.next().getValue();
+				if (entry.expiresAt <= now || entry.get() == null) {
+					iterator.remove();
+					evictions.incrementAndGet();
+				}
+			}
+
+			iterator = entries.entrySet().iterator();
+			while (entries.size() > targetSize && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+				evictions.incrementAndGet();
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void purgeCollected() {
+		CacheEntry<K, V> entry;
+		while ((entry = (CacheEntry<K, V>) collected.poll()) != null) {
+			if (entries.remove(entry.key, entry)) {
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [size=" + size() + ", maximumSize=" + maximumSize + ", hits=" + hits
+				+ ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+	private static class CacheEntry<K, V> extends SoftReference<V> {
+
+		private final K key;
+		private final long expiresAt;
+
+		CacheEntry(K key, V value, long expiresAt, ReferenceQueue<V> queue) {
+			super(value, queue);
+			this.key = key;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
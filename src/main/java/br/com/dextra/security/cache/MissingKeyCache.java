@@ -0,0 +1,43 @@
+package br.com.dextra.security.cache;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+
+/**
+ * Bounded cache of the aliases a certificate repository has no key for, so that tokens naming unknown providers are
+ * rejected without looking for the key again. Each alias is remembered for a fixed time, after which the key is looked
+ * up again, which is what makes a key added later be found without clearing the caches.
+ */
+public class MissingKeyCache extends BoundedExpiringCache<String, Boolean> {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+	public static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+	private final long timeToLive;
+
+	public MissingKeyCache() {
+		this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * @param timeToLive For how long, in milliseconds, an alias is known to be missing.
+	 */
+	public MissingKeyCache(int maximumSize, long timeToLive) {
+		super(maximumSize, "missing key cache");
+		if (timeToLive <= 0) {
+			throw new ConfigurationException("The time to live of the missing key cache must be positive.");
+		}
+		this.timeToLive = timeToLive;
+	}
+
+	public boolean isMissing(String alias) {
+		return get(alias) != null;
+	}
+
+	public void markMissing(String alias) {
+		put(alias, Boolean.TRUE, currentTime() + timeToLive);
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+}
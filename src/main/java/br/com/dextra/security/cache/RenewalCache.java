@@ -0,0 +1,161 @@
+package br.com.dextra.security.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.exceptions.ConfigurationException;
+
+/**
+ * Coalesces the renewals of the same token. The parallel requests of a page usually carry the same token, so they all
+ * find it must be renewed at the same time; the first one signs the new credential and the others, during a short
+ * window, reuse it instead of signing one each.
+ * <p>
+ * Expired renewals are purged at most once per window. When the cache is full, tokens not in it are renewed without
+ * being coalesced until the next purge makes room.
+ */
+public class RenewalCache {
+
+	public static final long DEFAULT_WINDOW = 10000;
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	private final long window;
+	private final int maximumSize;
+	private final AtomicLong nextPurge = new AtomicLong();
+
+	private final ConcurrentMap<String, Renewal> renewals = new ConcurrentHashMap<String, Renewal>();
+
+	private final AtomicLong renewalCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	public RenewalCache() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param window For how long, in milliseconds, a renewed credential is reused.
+	 */
+	public RenewalCache(long window) {
+		this(window, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param window For how long, in milliseconds, a renewed credential is reused.
+	 */
+	public RenewalCache(long window, int maximumSize) {
+		if (window <= 0) {
+			throw new ConfigurationException("The window of the renewal cache must be positive.");
+		}
+		if (maximumSize <= 0) {
+			throw new ConfigurationException("The maximum size of the renewal cache must be positive.");
+		}
+		this.window = window;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @return The credential renewed from the token by this call or by another one in the last window.
+	 */
+	public Credential renew(String token, Callable<Credential> renewal) throws Exception {
+		long now = currentTime();
+
+		Renewal current = renewals.get(token);
+		if (current == null || current.expiresAt <= now) {
+			purgeExpired(now);
+
+			if (current == null && renewals.size() >= maximumSize) {
+				renewalCount.incrementAndGet();
+				return renewal.call();
+			}
+
+			Renewal created = new Renewal(new FutureTask<Credential>(renewal), now + window);
+			if (current == null) {
+				current = renewals.putIfAbsent(token, created);
+			} else {
+				current = renewals.replace(token, current, created) ? null : renewals.get(token);
+			}
+
+			if (current == null) {
+				renewalCount.incrementAndGet();
+				created.task.run();
+				current = created;
+			} else {
+				coalescedCount.incrementAndGet();
+			}
+		} else {
+			coalescedCount.incrementAndGet();
+		}
+
+		try {
+			return current.task.get();
+		} catch (ExecutionException e) {
+			renewals.remove(token, current);
+
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+
+	private void purgeExpired(long now) {
+		long next = nextPurge.get();
+		if (now < next || !nextPurge.compareAndSet(next, now + window)) {
+			return;
+		}
+
+		Iterator<Renewal> iterator = renewals.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().expiresAt <= now) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public int size() {
+		return renewals.size();
+	}
+
+	public long getWindow() {
+		return window;
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long getRenewalCount() {
+		return renewalCount.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	protected long currentTime() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public String toString() {
+		return "RenewalCache [size=" + size() + ", maximumSize=" + maximumSize + ", window=" + window + ", renewals="
+				+ renewalCount + ", coalesced=" + coalescedCount + "]";
+	}
+
+	private static class Renewal {
+
+		private final FutureTask<Credential> task;
+		private final long expiresAt;
+
+		Renewal(FutureTask<Credential> task, long expiresAt) {
+			this.task = task;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package br.com.dextra.security.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Lazily loaded values that are loaded at most once per key. The first thread that misses a key runs the
+ * {@link Loader}, the threads that miss the same key meanwhile wait for that load instead of starting their own.
+ * Lookups of loaded keys take no locks. A load that fails is forgotten, so the next lookup of the key tries again.
+ */
+public class SingleFlightCache<K, V> {
+
+	public interface Loader<K, V> {
+
+		V load(K key);
+	}
+
+	private final ConcurrentMap<K, Future<V>> values = new ConcurrentHashMap<K, Future<V>>();
+	private final Loader<K, V> loader;
+
+	public SingleFlightCache(Loader<K, V> loader) {
+		this.loader = loader;
+	}
+
+	public V get(final K key) {
+		Future<V> future = values.get(key);
+		if (future == null) {
+			FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+				@Override
+				public V call() {
+					return loader.load(key);
+				}
+			});
+
+			future = values.putIfAbsent(key, task);
+			if (future == null) {
+				future = task;
+				task.run();
+			}
+		}
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			values.remove(key, future);
+
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Stores a value that was loaded elsewhere, replacing the current one.
+	 */
+	public void put(K key, V value) {
+		FutureTask<V> task = new FutureTask<V>(new Constant<V>(value));
+		task.run();
+		values.put(key, task);
+	}
+
+	/**
+	 * @return <code>true</code> if the key was loaded or is being loaded.
+	 */
+	public boolean containsKey(K key) {
+		return values.containsKey(key);
+	}
+
+	public void invalidate(K key) {
+		values.remove(key);
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	private static class Constant<V> implements Callable<V> {
+
+		private final V value;
+
+		Constant(V value) {
+			this.value = value;
+		}
+
+		@Override
+		public V call() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package br.com.dextra.security.cache;
+
+import br.com.dextra.security.Credential;
+
+/**
+ * Bounded cache of authentication tokens whose signature was already verified. Each entry lives until the credential
+ * it holds would expire; eviction is described in {@link BoundedExpiringCache}.
+ */
+public class VerifiedTokenCache extends BoundedExpiringCache<String, Credential> {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	public VerifiedTokenCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public VerifiedTokenCache(int maximumSize) {
+		super(maximumSize, "verified token cache");
+	}
+
+	@Override
+	public Credential get(String token) {
+		return super.get(token);
+	}
+
+	@Override
+	public void put(String token, Credential credential, long expiresAt) {
+		super.put(token, credential, expiresAt);
+	}
+}
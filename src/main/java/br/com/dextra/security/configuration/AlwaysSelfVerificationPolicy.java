@@ -0,0 +1,11 @@
+package br.com.dextra.security.configuration;
+
+import java.security.PrivateKey;
+
+public class AlwaysSelfVerificationPolicy implements SelfVerificationPolicy {
+
+	@Override
+	public boolean mustVerify(PrivateKey privateKey) {
+		return true;
+	}
+}
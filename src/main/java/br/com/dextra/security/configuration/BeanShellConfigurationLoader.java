@@ -0,0 +1,31 @@
+package br.com.dextra.security.configuration;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+import bsh.EvalError;
+import bsh.Interpreter;
+
+/**
+ * Evaluates a BeanShell script with the {@link Configuration} bound to <code>configuration</code>. Anything can be
+ * configured this way, but the interpreter is slow to start, see {@link PropertiesConfigurationLoader}.
+ */
+public class BeanShellConfigurationLoader implements ConfigurationLoader {
+
+	@Override
+	public Configuration load(ClassLoader loader, InputStream in) {
+		try {
+			Configuration configuration = new Configuration();
+
+			Interpreter i = new Interpreter();
+			i.set("configuration", configuration);
+
+			i.eval(new InputStreamReader(in));
+
+			return configuration;
+		} catch (EvalError e) {
+			throw new ConfigurationException(e);
+		}
+	}
+}
@@ -1,20 +1,37 @@
 package br.com.dextra.security.configuration;
 
-import java.io.InputStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.io.IOUtils;
+
+import br.com.dextra.security.TokenFormat;
+import br.com.dextra.security.TokenSource;
+import br.com.dextra.security.cache.RenewalCache;
+import br.com.dextra.security.cache.VerifiedTokenCache;
 import br.com.dextra.security.exceptions.ConfigurationException;
-import bsh.EvalError;
-import bsh.Interpreter;
+import br.com.dextra.security.metrics.MetricsRegistry;
+import br.com.dextra.security.utils.AuthenticationUtil;
+import br.com.dextra.security.utils.SignatureAlgorithm;
 
-public class Configuration {
+public class Configuration implements SignatureAlgorithmSelector, KeyChangeListener {
 
 	public static final String CONFIGURATION_FILE_KEY = "security.configuration.bsh";
 
 	private static final int DEFAULT_COOKIE_EXPIRY_TIMEOUT = -1;
 	private static final int DEFAULT_RENEW_TIMEOUT = Integer.MAX_VALUE;
 	private static final int DEFAULT_EXPIRY_TIMEOUT = Integer.MAX_VALUE;
+	private static final List<TokenSource> DEFAULT_TOKEN_SOURCES = Collections.unmodifiableList(Arrays.asList(
+			TokenSource.HEADER, TokenSource.COOKIE, TokenSource.QUERY));
 
 	private CertificateRepository certificateRepository;
 	private String myProvider;
@@ -28,24 +45,71 @@ public class Configuration {
 	private int cookieExpiryTimeout = DEFAULT_COOKIE_EXPIRY_TIMEOUT;
 	private long expiryTimeout = DEFAULT_EXPIRY_TIMEOUT;
 	private long renewTimeout = DEFAULT_RENEW_TIMEOUT;
+	private long renewJitter = 0;
 
-	public static Configuration buildFromFile(ClassLoader loader, String path) {
-		try {
-			Configuration configuration = new Configuration();
+	private VerifiedTokenCache verifiedTokenCache;
 
-			Interpreter i = new Interpreter();
-			i.set("configuration", configuration);
+	private RenewalCache renewalCache = new RenewalCache();
 
-			InputStreamReader reader = new InputStreamReader(loader.getResourceAsStream(path));
+	private SelfVerificationPolicy selfVerificationPolicy = new AlwaysSelfVerificationPolicy();
+	private SignatureMismatchHandler signatureMismatchHandler = new ExceptionSignatureMismatchHandler();
 
-			i.eval(reader);
+	private SignatureAlgorithm signatureAlgorithm;
+	private Map<String, SignatureAlgorithm> providerSignatureAlgorithms = new HashMap<String, SignatureAlgorithm>();
 
-			configuration.validate();
+	private boolean hmacSelfIssuedTokens = false;
+
+	private boolean compactTimestamps = false;
+
+	private TokenFormat tokenFormat = TokenFormat.V1;
+
+	private boolean stableCookieName = false;
+
+	private List<TokenSource> tokenSources = DEFAULT_TOKEN_SOURCES;
+
+	private String metricsDomain;
+	private boolean metricsExported = false;
+
+	/**
+	 * Loads the configuration file from the class path: <code>.properties</code> files with
+	 * {@link PropertiesConfigurationLoader}, any other file as a BeanShell script.
+	 */
+	public static Configuration buildFromFile(ClassLoader loader, String path) {
+		if (path == null) {
+			throw new ConfigurationException("The path of the configuration file is required (" + CONFIGURATION_FILE_KEY
+					+ ").");
+		}
+
+		InputStream in = loader.getResourceAsStream(path);
+		if (in == null) {
+			throw new ConfigurationException("Configuration file not found : " + path);
+		}
 
-			return configuration;
-		} catch (EvalError e) {
+		Configuration configuration;
+		try {
+			configuration = getLoaderFor(path).load(loader, in);
+		} catch (IOException e) {
 			throw new ConfigurationException(e);
+		} finally {
+			IOUtils.closeQuietly(in);
 		}
+
+		try {
+			configuration.validate();
+		} catch (ConfigurationException e) {
+			configuration.destroy();
+			throw e;
+		}
+		configuration.exportMetrics();
+
+		return configuration;
+	}
+
+	public static ConfigurationLoader getLoaderFor(String path) {
+		if (path.endsWith(".properties")) {
+			return new PropertiesConfigurationLoader();
+		}
+		return new BeanShellConfigurationLoader();
 	}
 
 	public void validate() {
@@ -56,6 +120,21 @@ public class Configuration {
 			throw new ConfigurationException("The name of the provider is required for the correct setup of the authentication mechanism.");
 		}
 
+		if (hmacSelfIssuedTokens && !(certificateRepository instanceof SecretKeyRepository)) {
+			throw new ConfigurationException("HMAC self issued tokens require a certificate repository that holds a secret key.");
+		}
+
+		if (tokenFormat == null) {
+			tokenFormat = TokenFormat.V1;
+		}
+		if (tokenSources == null || tokenSources.isEmpty()) {
+			tokenSources = DEFAULT_TOKEN_SOURCES;
+		}
+
+		if (renewJitter < 0 || renewJitter > renewTimeout) {
+			throw new ConfigurationException("The renew jitter must be between zero and the renew timeout.");
+		}
+
 		if (allowedProviders == null) {
 			allowedProviders = new HashSet<String>();
 		}
@@ -72,6 +151,13 @@ public class Configuration {
 		if (authenticationSuccessHandler == null) {
 			authenticationSuccessHandler = new WriteTokenOnResponseResponseHandler();
 		}
+
+		if (selfVerificationPolicy == null) {
+			selfVerificationPolicy = new AlwaysSelfVerificationPolicy();
+		}
+		if (signatureMismatchHandler == null) {
+			signatureMismatchHandler = new ExceptionSignatureMismatchHandler();
+		}
 	}
 
 	public CertificateRepository getCertificateRepository() {
@@ -80,6 +166,13 @@ public class Configuration {
 
 	public void setCertificateRepository(CertificateRepository certificateRepository) {
 		this.certificateRepository = certificateRepository;
+		if (certificateRepository instanceof SignatureAlgorithmAware) {
+			((SignatureAlgorithmAware) certificateRepository).setSignatureAlgorithmSelector(this);
+		}
+		if (certificateRepository instanceof KeyChangeAware) {
+			((KeyChangeAware) certificateRepository).setKeyChangeListener(this);
+		}
+		clearVerifiedTokenCache();
 	}
 
 	public String getMyProvider() {
@@ -106,6 +199,7 @@ public class Configuration {
 	public void setAllowedProviders(Set<String> allowedProviders) {
 		this.allowedProviders = new HashSet<String>();
 		this.allowedProviders.addAll(allowedProviders);
+		clearVerifiedTokenCache();
 	}
 
 	public ResponseHandler getNotAuthenticatedHandler() {
@@ -164,7 +258,215 @@ public class Configuration {
 		this.renewTimeout = renewTimeout;
 	}
 
+	public long getRenewJitter() {
+		return renewJitter;
+	}
+
+	/**
+	 * Spreads the renewals of credentials issued together: each credential is renewed at a point of
+	 * <code>[renewTimeout - renewJitter, renewTimeout]</code> chosen by a hash of the credential, so it is always the
+	 * same for the same token. Defaults to zero, every credential is renewed after the renew timeout.
+	 */
+	public void setRenewJitter(long renewJitter) {
+		this.renewJitter = renewJitter;
+	}
+
+	public VerifiedTokenCache getVerifiedTokenCache() {
+		return verifiedTokenCache;
+	}
+
+	/**
+	 * Enables the cache of already verified tokens on the {@link br.com.dextra.security.AuthenticationFilter}. The
+	 * cache is disabled (<code>null</code>) by default.
+	 */
+	public void setVerifiedTokenCache(VerifiedTokenCache verifiedTokenCache) {
+		this.verifiedTokenCache = verifiedTokenCache;
+	}
+
+	public SelfVerificationPolicy getSelfVerificationPolicy() {
+		return selfVerificationPolicy;
+	}
+
+	public void setSelfVerificationPolicy(SelfVerificationPolicy selfVerificationPolicy) {
+		this.selfVerificationPolicy = selfVerificationPolicy;
+	}
+
+	public SignatureMismatchHandler getSignatureMismatchHandler() {
+		return signatureMismatchHandler;
+	}
+
+	public void setSignatureMismatchHandler(SignatureMismatchHandler signatureMismatchHandler) {
+		this.signatureMismatchHandler = signatureMismatchHandler;
+	}
+
+	/**
+	 * The algorithm of the private key of {@link #getMyProvider()}, used to sign the tokens issued by this application,
+	 * or <code>null</code> if it was not set.
+	 */
+	@Override
+	public SignatureAlgorithm getSignatureAlgorithm() {
+		return getSignatureAlgorithmFor(myProvider);
+	}
+
+	@Override
+	public SignatureAlgorithm getSignatureAlgorithmFor(String provider) {
+		SignatureAlgorithm algorithm = providerSignatureAlgorithms.get(provider);
+		return algorithm != null ? algorithm : signatureAlgorithm;
+	}
+
+	/**
+	 * Sets the algorithm used by every provider without an algorithm of its own. When none is set, the certificate
+	 * repository decodes the keys with the algorithm it was built with ({@link SignatureAlgorithm#DSA} by default).
+	 */
+	public void setSignatureAlgorithm(SignatureAlgorithm signatureAlgorithm) {
+		this.signatureAlgorithm = signatureAlgorithm;
+	}
+
+	public void setSignatureAlgorithm(String provider, SignatureAlgorithm signatureAlgorithm) {
+		this.providerSignatureAlgorithms.put(provider, signatureAlgorithm);
+	}
+
+	public boolean isHmacSelfIssuedTokens() {
+		return hmacSelfIssuedTokens;
+	}
+
+	/**
+	 * When enabled, the tokens of {@link #getMyProvider()} are authenticated with HMAC-SHA256 keyed by the secret of the
+	 * {@link SecretKeyRepository}, which is much cheaper to produce and verify than an asymmetric signature. Tokens of
+	 * the other providers keep their signatures. Disabled by default.
+	 */
+	public void setHmacSelfIssuedTokens(boolean hmacSelfIssuedTokens) {
+		this.hmacSelfIssuedTokens = hmacSelfIssuedTokens;
+	}
+
+	public boolean isCompactTimestamps() {
+		return compactTimestamps;
+	}
+
+	/**
+	 * When enabled, the tokens issued or renewed by this application carry the compact encoding of
+	 * {@link br.com.dextra.security.utils.TimestampCodec} instead of <code>yyyyMMdd.HHmmssSSS</code>. Both encodings
+	 * are always accepted, so every application that may receive these tokens must be updated before this is enabled.
+	 * Disabled by default.
+	 */
+	public void setCompactTimestamps(boolean compactTimestamps) {
+		this.compactTimestamps = compactTimestamps;
+	}
+
+	public TokenFormat getTokenFormat() {
+		return tokenFormat;
+	}
+
+	/**
+	 * The format of the tokens issued or renewed by this application. Tokens in any format are accepted, so the
+	 * applications that may receive these tokens must be updated before {@link TokenFormat#V2} is enabled. Defaults to
+	 * {@link TokenFormat#V1}.
+	 */
+	public void setTokenFormat(TokenFormat tokenFormat) {
+		this.tokenFormat = tokenFormat;
+	}
+
+	/**
+	 * Releases what the configuration holds, such as the threads watching the key files. Called when the filter or
+	 * the servlet is destroyed.
+	 */
+	public void destroy() {
+		if (metricsExported) {
+			metricsExported = false;
+			MetricsRegistry.getInstance().unexport();
+		}
+
+		AuthenticationUtil.getSignatureEngine().reset();
+
+		if (certificateRepository instanceof Closeable) {
+			try {
+				((Closeable) certificateRepository).close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Exports the {@link MetricsRegistry} as MBeans when {@link #getMetricsDomain()} is set. Called once the
+	 * configuration is built, and undone by {@link #destroy()}.
+	 */
+	public void exportMetrics() {
+		if (metricsDomain != null && !metricsExported) {
+			metricsExported = true;
+			MetricsRegistry.getInstance().export(metricsDomain);
+		}
+	}
+
+	public boolean isStableCookieName() {
+		return stableCookieName;
+	}
+
+	/**
+	 * When enabled, the token is always kept on a cookie named <code>auth</code>, replaced on every login and renewal,
+	 * instead of a new <code>auth&lt;millis&gt;</code> cookie each time. The cookies of the old scheme are expired on
+	 * the next request that carries them. Disabled by default.
+	 */
+	public void setStableCookieName(boolean stableCookieName) {
+		this.stableCookieName = stableCookieName;
+	}
+
+	public List<TokenSource> getTokenSources() {
+		return tokenSources;
+	}
+
+	/**
+	 * Where the {@link br.com.dextra.security.AuthenticationFilter} looks for the token, in order. The default is
+	 * {@link TokenSource#HEADER}, {@link TokenSource#COOKIE} and {@link TokenSource#QUERY}; the body of form posts is
+	 * only parsed when {@link TokenSource#PARAMETER} is added.
+	 */
+	public void setTokenSources(TokenSource... tokenSources) {
+		this.tokenSources = Collections.unmodifiableList(new ArrayList<TokenSource>(Arrays.asList(tokenSources)));
+	}
+
+	public String getMetricsDomain() {
+		return metricsDomain;
+	}
+
+	/**
+	 * The JMX domain the latency metrics are exported to, usually {@link MetricsRegistry#DEFAULT_DOMAIN}. The metrics
+	 * are always recorded, but only exported when this is set.
+	 */
+	public void setMetricsDomain(String metricsDomain) {
+		this.metricsDomain = metricsDomain;
+	}
+
+	public RenewalCache getRenewalCache() {
+		return renewalCache;
+	}
+
+	/**
+	 * Coalesces the renewals of the same token by parallel requests. Enabled by default, <code>null</code> makes every
+	 * request renew the token on its own.
+	 */
+	public void setRenewalCache(RenewalCache renewalCache) {
+		this.renewalCache = renewalCache;
+	}
+
 	public void addAllowedProvider(String provider) {
 		this.allowedProviders.add(provider);
+		clearVerifiedTokenCache();
+	}
+
+	/**
+	 * Drops the tokens verified so far, so they are checked again against the current providers and keys.
+	 */
+	public void clearVerifiedTokenCache() {
+		if (verifiedTokenCache != null) {
+			verifiedTokenCache.clear();
+		}
+	}
+
+	/**
+	 * Called by the {@link KeyChangeAware} repositories, see {@link #clearVerifiedTokenCache()}.
+	 */
+	@Override
+	public void keysChanged() {
+		clearVerifiedTokenCache();
 	}
 }
@@ -0,0 +1,39 @@
+package br.com.dextra.security.configuration;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Loads the configuration named by the {@link Configuration#CONFIGURATION_FILE_KEY} context parameter when the web
+ * application starts, before any filter or servlet, and destroys the configurations of the
+ * {@link ConfigurationRegistry} when it stops:
+ *
+ * <pre>
+ * &lt;listener&gt;
+ *     &lt;listener-class&gt;br.com.dextra.security.configuration.ConfigurationContextListener&lt;/listener-class&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ */
+public class ConfigurationContextListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+
+		ConfigurationRegistry registry = ConfigurationRegistry.get(context);
+
+		String path = context.getInitParameter(Configuration.CONFIGURATION_FILE_KEY);
+		if (path != null) {
+			registry.acquire(getClass().getClassLoader(), path);
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+
+		ConfigurationRegistry.get(context).destroy();
+		context.removeAttribute(ConfigurationRegistry.ATTRIBUTE);
+	}
+}
@@ -0,0 +1,16 @@
+package br.com.dextra.security.configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a {@link Configuration} from a configuration file. {@link Configuration#buildFromFile(ClassLoader, String)}
+ * chooses the loader by the extension of the file and validates what it returns.
+ */
+public interface ConfigurationLoader {
+
+	/**
+	 * @param loader The class loader of the application, for the classes named by the file.
+	 */
+	Configuration load(ClassLoader loader, InputStream in) throws IOException;
+}
@@ -0,0 +1,143 @@
+package br.com.dextra.security.configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The configurations of a web application by the path of their file and the class loader they are read with, so the
+ * filters and servlets configured with the same file share one {@link Configuration}: the keys are loaded once and the
+ * caches are shared. A configuration is built by the first {@link #acquire(ClassLoader, String)} and destroyed when the
+ * last component releases it, or when the context is destroyed if the {@link ConfigurationContextListener} is
+ * registered.
+ * <p>
+ * Each registry is locked on its own, so the configurations of other web applications are built at the same time.
+ */
+public class ConfigurationRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConfigurationRegistry.class);
+
+	public static final String ATTRIBUTE = ConfigurationRegistry.class.getName();
+
+	private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+	/**
+	 * @return The registry of the context, created on the first call.
+	 */
+	public static ConfigurationRegistry get(ServletContext context) {
+		synchronized (context) {
+			ConfigurationRegistry registry = (ConfigurationRegistry) context.getAttribute(ATTRIBUTE);
+			if (registry == null) {
+				registry = new ConfigurationRegistry();
+				context.setAttribute(ATTRIBUTE, registry);
+			}
+			return registry;
+		}
+	}
+
+	/**
+	 * @return The configuration of the file, built by this call if no other component holds it. Must be paired with a
+	 *         call to {@link #release(Configuration)}.
+	 */
+	public Configuration acquire(ClassLoader loader, String path) {
+		Key key = new Key(loader, path);
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(Configuration.buildFromFile(loader, path));
+				entries.put(key, entry);
+				logger.info("Configuration {} loaded : {}", path, entry.configuration);
+			}
+			entry.references++;
+			return entry.configuration;
+		}
+	}
+
+	/**
+	 * Destroys the configuration if no other component holds it.
+	 */
+	public void release(Configuration configuration) {
+		synchronized (this) {
+			Iterator<Entry> iterator = entries.values().iterator();
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+				if (entry.configuration == configuration) {
+					if (--entry.references == 0) {
+						iterator.remove();
+						configuration.destroy();
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Destroys every configuration, whoever holds it.
+	 */
+	public void destroy() {
+		List<Configuration> configurations = new ArrayList<Configuration>();
+		synchronized (this) {
+			for (Entry entry : entries.values()) {
+				configurations.add(entry.configuration);
+			}
+			entries.clear();
+		}
+
+		for (Configuration configuration : configurations) {
+			try {
+				configuration.destroy();
+			} catch (RuntimeException e) {
+				logger.warn("Error while destroying the configuration " + configuration, e);
+			}
+		}
+	}
+
+	public int size() {
+		synchronized (this) {
+			return entries.size();
+		}
+	}
+
+	private static class Key {
+
+		private final ClassLoader loader;
+		private final String path;
+
+		Key(ClassLoader loader, String path) {
+			this.loader = loader;
+			this.path = path;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(loader) + path.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return loader == other.loader && path.equals(other.path);
+		}
+	}
+
+	private static class Entry {
+
+		private final Configuration configuration;
+		private int references;
+
+		Entry(Configuration configuration) {
+			this.configuration = configuration;
+		}
+	}
+}
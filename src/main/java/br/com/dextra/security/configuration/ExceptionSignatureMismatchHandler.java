@@ -0,0 +1,11 @@
+package br.com.dextra.security.configuration;
+
+import br.com.dextra.security.Credential;
+
+public class ExceptionSignatureMismatchHandler implements SignatureMismatchHandler {
+
+	@Override
+	public void onMismatch(Credential credential, String signature) {
+		throw new RuntimeException("Missed public and private keys.");
+	}
+}
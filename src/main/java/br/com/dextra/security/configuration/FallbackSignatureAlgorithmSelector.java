@@ -0,0 +1,32 @@
+package br.com.dextra.security.configuration;
+
+import br.com.dextra.security.utils.SignatureAlgorithm;
+
+/**
+ * Asks another selector first and answers with a fixed algorithm wherever it has no preference. Repositories wrap the
+ * selector they are given with the algorithm they were built with, so it is only overridden for the providers whose
+ * algorithm was set explicitly.
+ */
+public class FallbackSignatureAlgorithmSelector implements SignatureAlgorithmSelector {
+
+	private final SignatureAlgorithmSelector selector;
+	private final SignatureAlgorithm fallback;
+
+	public FallbackSignatureAlgorithmSelector(SignatureAlgorithmSelector selector, SignatureAlgorithm fallback) {
+		super();
+		this.selector = selector;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public SignatureAlgorithm getSignatureAlgorithm() {
+		SignatureAlgorithm algorithm = selector != null ? selector.getSignatureAlgorithm() : null;
+		return algorithm != null ? algorithm : fallback;
+	}
+
+	@Override
+	public SignatureAlgorithm getSignatureAlgorithmFor(String provider) {
+		SignatureAlgorithm algorithm = selector != null ? selector.getSignatureAlgorithmFor(provider) : null;
+		return algorithm != null ? algorithm : fallback;
+	}
+}
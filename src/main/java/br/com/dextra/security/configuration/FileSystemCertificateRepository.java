@@ -2,40 +2,85 @@ package br.com.dextra.security.configuration;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 import java.text.MessageFormat;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.Map.Entry;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import br.com.dextra.security.cache.MissingKeyCache;
+import br.com.dextra.security.cache.SingleFlightCache;
+import br.com.dextra.security.exceptions.ConfigurationException;
 import br.com.dextra.security.exceptions.InvalidKeyPathException;
+import br.com.dextra.security.utils.SignatureAlgorithm;
 
-public class FileSystemCertificateRepository implements CertificateRepository {
+/**
+ * Reads the keys from files: the private key and the optional secret key from their paths and the public key of each
+ * provider from a file named after the provider in the public keys directory. The keys are loaded on first use, once
+ * per key even when many threads ask for it at the same time, and kept until {@link #clearCaches()}, which replaces
+ * all of them at once.
+ * <p>
+ * Providers without a key file are remembered by a {@link MissingKeyCache}, so tokens naming unknown providers are
+ * rejected without touching the disk again.
+ * <p>
+ * After {@link #startWatching()} the key directories are watched and each key file that changes is reloaded in the
+ * background and swapped in place of the old key, so keys can be rotated without {@link #clearCaches()}.
+ * <p>
+ * {@link #preload()} loads every key up front, so no request pays for reading a key.
+ * <p>
+ * The {@link KeyChangeListener} is told whenever keys are replaced or dropped.
+ */
+public class FileSystemCertificateRepository implements CertificateRepository, SecretKeyRepository,
+		SignatureAlgorithmAware, KeyChangeAware, Closeable {
 
 	private static final Logger logger = LoggerFactory.getLogger(FileSystemCertificateRepository.class);
 
 	private final String privateKeyPath;
 	private final String publicKeysPath;
-	private PrivateKey privateKey;
-	private Map<String, PublicKey> publicKeys = new HashMap<String, PublicKey>();
+	private volatile String secretKeyPath;
+	private final SignatureAlgorithm signatureAlgorithm;
+	private volatile SignatureAlgorithmSelector signatureAlgorithmSelector;
+	private volatile KeyChangeListener keyChangeListener;
+
+	private volatile KeyState state = new KeyState();
+	private volatile MissingKeyCache missingKeyCache = new MissingKeyCache();
+
+	private KeyFileWatcher watcher;
 
 	public FileSystemCertificateRepository(String privateKeyPath, String publicKeysPath) {
+		this(privateKeyPath, publicKeysPath, SignatureAlgorithm.DSA);
+	}
+
+	public FileSystemCertificateRepository(String privateKeyPath, String publicKeysPath,
+			SignatureAlgorithm signatureAlgorithm) {
 		super();
 		this.privateKeyPath = processEnvironmentVariables(privateKeyPath);
 		this.publicKeysPath = processEnvironmentVariables(publicKeysPath);
+		this.signatureAlgorithm = signatureAlgorithm;
+		this.signatureAlgorithmSelector = new FixedSignatureAlgorithmSelector(signatureAlgorithm);
 	}
 
 	public static String processEnvironmentVariables(String keyPath) {
@@ -49,54 +94,281 @@ public class FileSystemCertificateRepository implements CertificateRepository {
 	}
 
 	public PrivateKey getPrivateKey() {
-		if (privateKey != null) {
-			return privateKey;
-		}
+		return state.privateKeys.get(privateKeyPath);
+	}
 
+	private PrivateKey loadPrivateKey(String path) {
 		try {
-			byte[] encKey = loadKeyFor(privateKeyPath);
-			PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(encKey);
-			KeyFactory keyFactory = KeyFactory.getInstance("DSA", "SUN");
-
-			privateKey = keyFactory.generatePrivate(privateKeySpec);
+			byte[] encKey = loadKeyFor(path);
 
-			return privateKey;
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchProviderException e) {
-			throw new RuntimeException(e);
+			return signatureAlgorithmSelector.getSignatureAlgorithm().decodePrivateKey(encKey);
 		} catch (InvalidKeySpecException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * @return The secret read as raw bytes from {@link #getSecretKeyPath()} or <code>null</code> if no path was set.
+	 */
+	@Override
+	public SecretKey getSecretKey() {
+		String path = secretKeyPath;
+		if (path == null) {
+			return null;
+		}
+
+		return state.secretKeys.get(path);
+	}
+
 	public PublicKey getPublicKeyFor(String alias) {
-		PublicKey publicKey = publicKeys.get(alias);
-		if (publicKey != null) {
-			return publicKey;
+		MissingKeyCache missing = missingKeyCache;
+		if (missing != null && missing.isMissing(alias)) {
+			throw new InvalidKeyPathException(generatePublicKeyPath(alias));
 		}
 
-		try {
-			byte[] encKey = loadKeyFor(generatePublicKeyPath(alias));
-			X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(encKey);
-			KeyFactory keyFactory = KeyFactory.getInstance("DSA", "SUN");
-			publicKey = keyFactory.generatePublic(pubKeySpec);
+		return state.publicKeys.get(alias);
+	}
 
-			publicKeys.put(alias, publicKey);
+	private PublicKey loadPublicKey(String alias) {
+		String path = generatePublicKeyPath(alias);
 
-			return publicKey;
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchProviderException e) {
-			throw new RuntimeException(e);
+		MissingKeyCache missing = missingKeyCache;
+		if (missing != null && !new File(path).isFile()) {
+			logger.warn("No public key found for {}.", alias);
+			missing.markMissing(alias);
+			throw new InvalidKeyPathException(path);
+		}
+
+		try {
+			byte[] encKey = loadKeyFor(path);
+
+			return signatureAlgorithmSelector.getSignatureAlgorithmFor(alias).decodePublicKey(encKey);
 		} catch (InvalidKeySpecException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	@Override
+	public void setSignatureAlgorithmSelector(SignatureAlgorithmSelector selector) {
+		this.signatureAlgorithmSelector = new FallbackSignatureAlgorithmSelector(selector, signatureAlgorithm);
+	}
+
+	@Override
+	public void setKeyChangeListener(KeyChangeListener listener) {
+		this.keyChangeListener = listener;
+	}
+
+	private void fireKeysChanged() {
+		KeyChangeListener listener = keyChangeListener;
+		if (listener != null) {
+			listener.keysChanged();
+		}
+	}
+
 	public void clearCaches() {
-		this.privateKey = null;
-		this.publicKeys.clear();
+		this.state = new KeyState();
+
+		MissingKeyCache missing = missingKeyCache;
+		if (missing != null) {
+			missing.clear();
+		}
+		fireKeysChanged();
+	}
+
+	/**
+	 * Reads the private key and every public key of the public keys directory, decoding them in parallel, and replaces
+	 * the loaded keys with them at once. Meant to be called from the configuration script, so the keys are ready
+	 * before the first request. Files that cannot be decoded are skipped and left to be loaded on demand.
+	 *
+	 * @return How many public keys were loaded.
+	 */
+	public int preload() {
+		return preload(Runtime.getRuntime().availableProcessors());
+	}
+
+	public int preload(int threads) {
+		long start = System.currentTimeMillis();
+
+		final KeyState preloaded = new KeyState();
+
+		List<Path> files = listPublicKeyFiles();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+		try {
+			List<Future<PublicKey>> results = new ArrayList<Future<PublicKey>>(files.size());
+			for (final Path file : files) {
+				results.add(executor.submit(new Callable<PublicKey>() {
+					@Override
+					public PublicKey call() throws IOException, InvalidKeySpecException {
+						String alias = file.getFileName().toString();
+						return signatureAlgorithmSelector.getSignatureAlgorithmFor(alias).decodePublicKey(
+								Files.readAllBytes(file));
+					}
+				}));
+			}
+
+			preloaded.privateKeys.put(privateKeyPath, loadPrivateKey(privateKeyPath));
+			String secret = secretKeyPath;
+			if (secret != null) {
+				preloaded.secretKeys.put(secret, new SecretKeySpec(loadKeyFor(secret), HMAC_ALGORITHM));
+			}
+
+			int loaded = 0;
+			for (int i = 0; i < files.size(); i++) {
+				Path file = files.get(i);
+				try {
+					preloaded.publicKeys.put(file.getFileName().toString(), results.get(i).get());
+					loaded++;
+				} catch (ExecutionException e) {
+					logger.warn("Could not preload the public key " + file, e.getCause());
+				}
+			}
+
+			this.state = preloaded;
+
+			MissingKeyCache missing = missingKeyCache;
+			if (missing != null) {
+				missing.clear();
+			}
+			fireKeysChanged();
+
+			logger.info("{} public keys preloaded in {} ms.", loaded, System.currentTimeMillis() - start);
+
+			return loaded;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private List<Path> listPublicKeyFiles() {
+		List<Path> files = new ArrayList<Path>();
+
+		Path privateKeyFile = toPath(privateKeyPath);
+		Path secretKeyFile = secretKeyPath == null ? null : toPath(secretKeyPath);
+
+		DirectoryStream<Path> stream = null;
+		try {
+			stream = Files.newDirectoryStream(toPath(publicKeysPath));
+			for (Path file : stream) {
+				if (Files.isRegularFile(file) && !file.getFileName().toString().startsWith(".")
+						&& !file.equals(privateKeyFile) && !file.equals(secretKeyFile)) {
+					files.add(file);
+				}
+			}
+			return files;
+		} catch (IOException e) {
+			throw new InvalidKeyPathException(publicKeysPath);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts watching the directories of the key files on a daemon thread. Calling it again does nothing.
+	 */
+	public synchronized void startWatching() {
+		if (watcher != null) {
+			return;
+		}
+
+		try {
+			KeyFileWatcher keyFileWatcher = new KeyFileWatcher("dxsecurity-key-watcher", new KeyFileWatcher.Listener() {
+				@Override
+				public void fileChanged(Path file) {
+					keyFileChanged(file);
+				}
+
+				@Override
+				public void eventsLost(Path directory) {
+					logger.warn("Changes on {} were lost, clearing the key caches.", directory);
+					clearCaches();
+				}
+			});
+
+			keyFileWatcher.watch(toPath(privateKeyPath).getParent());
+			keyFileWatcher.watch(toPath(publicKeysPath));
+			if (secretKeyPath != null) {
+				keyFileWatcher.watch(toPath(secretKeyPath).getParent());
+			}
+			keyFileWatcher.start();
+
+			watcher = keyFileWatcher;
+		} catch (IOException e) {
+			throw new ConfigurationException(e);
+		}
+	}
+
+	/**
+	 * Stops watching the key files.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Reloads a key that was already loaded from the file. The old key is kept if the new one cannot be read. The
+	 * {@link KeyChangeListener} is told of every key reloaded or dropped.
+	 */
+	protected void keyFileChanged(Path file) {
+		KeyState current = state;
+
+		try {
+			if (file.equals(toPath(privateKeyPath))) {
+				if (current.privateKeys.containsKey(privateKeyPath)) {
+					current.privateKeys.put(privateKeyPath, loadPrivateKey(privateKeyPath));
+					logger.info("Private key reloaded from {}.", file);
+					fireKeysChanged();
+				}
+				return;
+			}
+
+			String secret = secretKeyPath;
+			if (secret != null && file.equals(toPath(secret))) {
+				if (current.secretKeys.containsKey(secret)) {
+					current.secretKeys.put(secret, new SecretKeySpec(loadKeyFor(secret), HMAC_ALGORITHM));
+					logger.info("Secret key reloaded from {}.", file);
+					fireKeysChanged();
+				}
+				return;
+			}
+
+			if (file.getParent().equals(toPath(publicKeysPath))) {
+				String alias = file.getFileName().toString();
+				if (!Files.isRegularFile(file)) {
+					current.publicKeys.invalidate(alias);
+					fireKeysChanged();
+					return;
+				}
+
+				MissingKeyCache missing = missingKeyCache;
+				if (missing != null) {
+					missing.invalidate(alias);
+				}
+				if (current.publicKeys.containsKey(alias)) {
+					current.publicKeys.put(alias, loadPublicKey(alias));
+					logger.info("Public key of {} reloaded.", alias);
+					fireKeysChanged();
+				}
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Could not reload the key " + file + ", keeping the current one.", e);
+		}
+	}
+
+	private static Path toPath(String path) {
+		return Paths.get(path).toAbsolutePath().normalize();
 	}
 
 	private byte[] loadKeyFor(String path) {
@@ -143,4 +415,63 @@ public class FileSystemCertificateRepository implements CertificateRepository {
 	public String getPublicKeysPath() {
 		return publicKeysPath;
 	}
+
+	public MissingKeyCache getMissingKeyCache() {
+		return missingKeyCache;
+	}
+
+	/**
+	 * Replaces the cache of the providers without a key file. <code>null</code> disables it, so every lookup of an
+	 * unknown provider reads the disk again.
+	 */
+	public void setMissingKeyCache(MissingKeyCache missingKeyCache) {
+		this.missingKeyCache = missingKeyCache;
+	}
+
+	public String getSecretKeyPath() {
+		return secretKeyPath;
+	}
+
+	public synchronized void setSecretKeyPath(String secretKeyPath) {
+		this.secretKeyPath = secretKeyPath == null ? null : processEnvironmentVariables(secretKeyPath);
+
+		if (watcher != null && this.secretKeyPath != null) {
+			try {
+				watcher.watch(toPath(this.secretKeyPath).getParent());
+			} catch (IOException e) {
+				throw new ConfigurationException(e);
+			}
+		}
+	}
+
+	/**
+	 * Everything loaded since the last {@link FileSystemCertificateRepository#clearCaches()}. Lookups in progress when
+	 * the caches are cleared finish on the state they started with.
+	 */
+	private class KeyState {
+
+		private final SingleFlightCache<String, PrivateKey> privateKeys = new SingleFlightCache<String, PrivateKey>(
+				new SingleFlightCache.Loader<String, PrivateKey>() {
+					@Override
+					public PrivateKey load(String path) {
+						return loadPrivateKey(path);
+					}
+				});
+
+		private final SingleFlightCache<String, SecretKey> secretKeys = new SingleFlightCache<String, SecretKey>(
+				new SingleFlightCache.Loader<String, SecretKey>() {
+					@Override
+					public SecretKey load(String path) {
+						return new SecretKeySpec(loadKeyFor(path), HMAC_ALGORITHM);
+					}
+				});
+
+		private final SingleFlightCache<String, PublicKey> publicKeys = new SingleFlightCache<String, PublicKey>(
+				new SingleFlightCache.Loader<String, PublicKey>() {
+					@Override
+					public PublicKey load(String alias) {
+						return loadPublicKey(alias);
+					}
+				});
+	}
 }
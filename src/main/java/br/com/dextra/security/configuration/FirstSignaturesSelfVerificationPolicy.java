@@ -0,0 +1,47 @@
+package br.com.dextra.security.configuration;
+
+import java.security.PrivateKey;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+
+/**
+ * Verifies only the first signatures produced with each private key. The count starts over whenever the certificate
+ * repository hands out a different key instance, e.g. after its caches are cleared and the key is loaded again.
+ */
+public class FirstSignaturesSelfVerificationPolicy implements SelfVerificationPolicy {
+
+	private final int count;
+
+	private volatile PrivateKey currentKey;
+	private final AtomicInteger remaining = new AtomicInteger();
+
+	public FirstSignaturesSelfVerificationPolicy(int count) {
+		if (count < 0) {
+			throw new ConfigurationException("The number of signatures to verify can not be negative.");
+		}
+		this.count = count;
+	}
+
+	@Override
+	public boolean mustVerify(PrivateKey privateKey) {
+		if (privateKey != currentKey) {
+			synchronized (this) {
+				if (privateKey != currentKey) {
+					remaining.set(count);
+					currentKey = privateKey;
+				}
+			}
+		}
+
+		while (true) {
+			int current = remaining.get();
+			if (current <= 0) {
+				return false;
+			}
+			if (remaining.compareAndSet(current, current - 1)) {
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package br.com.dextra.security.configuration;
+
+import br.com.dextra.security.utils.SignatureAlgorithm;
+
+public class FixedSignatureAlgorithmSelector implements SignatureAlgorithmSelector {
+
+	private final SignatureAlgorithm signatureAlgorithm;
+
+	public FixedSignatureAlgorithmSelector(SignatureAlgorithm signatureAlgorithm) {
+		super();
+		this.signatureAlgorithm = signatureAlgorithm;
+	}
+
+	@Override
+	public SignatureAlgorithm getSignatureAlgorithm() {
+		return signatureAlgorithm;
+	}
+
+	@Override
+	public SignatureAlgorithm getSignatureAlgorithmFor(String provider) {
+		return signatureAlgorithm;
+	}
+}
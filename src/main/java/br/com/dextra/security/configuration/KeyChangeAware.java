@@ -0,0 +1,11 @@
+package br.com.dextra.security.configuration;
+
+/**
+ * Implemented by the {@link CertificateRepository} implementations whose keys change while they are in use. The
+ * {@link Configuration} registers itself as the listener when the repository is set and clears its
+ * {@link Configuration#getVerifiedTokenCache()} on each change, so tokens of a replaced key are verified again.
+ */
+public interface KeyChangeAware {
+
+	void setKeyChangeListener(KeyChangeListener listener);
+}
@@ -0,0 +1,10 @@
+package br.com.dextra.security.configuration;
+
+/**
+ * Told by a {@link KeyChangeAware} repository that some of its keys were reloaded, retired or removed, so whatever was
+ * verified with the old keys can be dropped.
+ */
+public interface KeyChangeListener {
+
+	void keysChanged();
+}
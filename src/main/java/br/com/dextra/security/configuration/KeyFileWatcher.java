@@ -0,0 +1,114 @@
+package br.com.dextra.security.configuration;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches directories with keys on a daemon thread and reports each file created, modified or deleted on them to a
+ * {@link Listener}. The listener runs on the watching thread, one event at a time.
+ */
+public class KeyFileWatcher implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(KeyFileWatcher.class);
+
+	public interface Listener {
+
+		void fileChanged(Path file);
+
+		/**
+		 * Events of the directory were lost, any of its files may have changed.
+		 */
+		void eventsLost(Path directory);
+	}
+
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> directories = new ConcurrentHashMap<WatchKey, Path>();
+	private final Listener listener;
+	private final Thread thread;
+
+	public KeyFileWatcher(String name, Listener listener) throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.listener = listener;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				processEvents();
+			}
+		}, name);
+		this.thread.setDaemon(true);
+	}
+
+	public void watch(Path directory) throws IOException {
+		Path absolute = directory.toAbsolutePath().normalize();
+		if (directories.containsValue(absolute)) {
+			return;
+		}
+
+		WatchKey key = absolute.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+		directories.put(key, absolute);
+
+		logger.debug("Watching key directory {}.", absolute);
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		thread.interrupt();
+	}
+
+	private void processEvents() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException e) {
+				return;
+			} catch (ClosedWatchServiceException e) {
+				return;
+			}
+
+			Path directory = directories.get(key);
+			if (directory != null) {
+				for (WatchEvent<?> event : key.pollEvents()) {
+					dispatch(directory, event);
+				}
+			}
+
+			if (!key.reset()) {
+				directories.remove(key);
+			}
+		}
+	}
+
+	private void dispatch(Path directory, WatchEvent<?> event) {
+		try {
+			if (event.kind() == OVERFLOW) {
+				listener.eventsLost(directory);
+			} else {
+				listener.fileChanged(directory.resolve((Path) event.context()));
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Error while processing a change on " + directory, e);
+		}
+	}
+}
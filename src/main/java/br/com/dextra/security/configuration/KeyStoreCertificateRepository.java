@@ -0,0 +1,271 @@
+package br.com.dextra.security.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+import br.com.dextra.security.exceptions.InvalidKeyPathException;
+
+/**
+ * Reads every key from a single keystore file (PKCS12 by default, or any other type known by {@link KeyStore}). The
+ * public key of each provider is the one of the certificate stored under the provider's alias, the private key and
+ * the optional secret key are the entries under the configured aliases. Aliases are case insensitive, as they are on
+ * the keystores themselves.
+ * <p>
+ * The whole keystore is read once and indexed; lookups never touch the file. {@link #clearCaches()}, or a change on the
+ * file after {@link #startWatching()}, reads it again and replaces the index at once, telling the
+ * {@link KeyChangeListener}.
+ */
+public class KeyStoreCertificateRepository implements CertificateRepository, SecretKeyRepository, KeyChangeAware,
+		Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(KeyStoreCertificateRepository.class);
+
+	public static final String DEFAULT_TYPE = "PKCS12";
+
+	private final String path;
+	private final String type;
+	private final char[] storePassword;
+	private final String privateKeyAlias;
+	private final char[] keyPassword;
+	private String secretKeyAlias;
+
+	private volatile KeyIndex index;
+	private volatile KeyChangeListener keyChangeListener;
+
+	private KeyFileWatcher watcher;
+
+	public KeyStoreCertificateRepository(String path, String storePassword, String privateKeyAlias) {
+		this(path, DEFAULT_TYPE, storePassword, privateKeyAlias, storePassword);
+	}
+
+	public KeyStoreCertificateRepository(String path, String type, String storePassword, String privateKeyAlias,
+			String keyPassword) {
+		this.path = FileSystemCertificateRepository.processEnvironmentVariables(path);
+		this.type = type;
+		this.storePassword = storePassword == null ? null : storePassword.toCharArray();
+		this.privateKeyAlias = privateKeyAlias;
+		this.keyPassword = keyPassword == null ? null : keyPassword.toCharArray();
+	}
+
+	@Override
+	public PrivateKey getPrivateKey() {
+		return getIndex().privateKey;
+	}
+
+	@Override
+	public SecretKey getSecretKey() {
+		return getIndex().secretKey;
+	}
+
+	@Override
+	public PublicKey getPublicKeyFor(String provider) {
+		Map<String, PublicKey> publicKeys = getIndex().publicKeys;
+
+		PublicKey publicKey = publicKeys.get(provider);
+		if (publicKey == null) {
+			publicKey = publicKeys.get(provider.toLowerCase(Locale.ENGLISH));
+		}
+		return publicKey;
+	}
+
+	/**
+	 * @return The aliases with a public key, in lower case.
+	 */
+	public Iterable<String> getProviders() {
+		return getIndex().publicKeys.keySet();
+	}
+
+	@Override
+	public void clearCaches() {
+		reload();
+	}
+
+	/**
+	 * Reads the keystore again and replaces every key at once.
+	 */
+	public void reload() {
+		this.index = load();
+		fireKeysChanged();
+	}
+
+	@Override
+	public void setKeyChangeListener(KeyChangeListener listener) {
+		this.keyChangeListener = listener;
+	}
+
+	private void fireKeysChanged() {
+		KeyChangeListener listener = keyChangeListener;
+		if (listener != null) {
+			listener.keysChanged();
+		}
+	}
+
+	private KeyIndex getIndex() {
+		KeyIndex current = index;
+		if (current == null) {
+			synchronized (this) {
+				current = index;
+				if (current == null) {
+					current = load();
+					index = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private KeyIndex load() {
+		byte[] content;
+		try {
+			content = Files.readAllBytes(Paths.get(path));
+		} catch (IOException e) {
+			logger.error("Keystore not found : " + path, e);
+			throw new InvalidKeyPathException(path);
+		}
+
+		try {
+			KeyStore keyStore = KeyStore.getInstance(type);
+			keyStore.load(new ByteArrayInputStream(content), storePassword);
+
+			Map<String, PublicKey> publicKeys = new HashMap<String, PublicKey>();
+			Enumeration<String> aliases = keyStore.aliases();
+			while (aliases.hasMoreElements()) {
+				String alias = aliases.nextElement();
+				Certificate certificate = keyStore.getCertificate(alias);
+				if (certificate != null) {
+					publicKeys.put(alias.toLowerCase(Locale.ENGLISH), certificate.getPublicKey());
+				}
+			}
+
+			PrivateKey privateKey = null;
+			if (privateKeyAlias != null) {
+				privateKey = (PrivateKey) keyStore.getKey(privateKeyAlias, keyPassword);
+			}
+
+			SecretKey secretKey = null;
+			if (secretKeyAlias != null) {
+				Key key = keyStore.getKey(secretKeyAlias, keyPassword);
+				if (key instanceof SecretKey) {
+					secretKey = (SecretKey) key;
+				}
+			}
+
+			logger.info("{} public keys loaded from {}.", publicKeys.size(), path);
+
+			return new KeyIndex(Collections.unmodifiableMap(publicKeys), privateKey, secretKey);
+		} catch (GeneralSecurityException e) {
+			throw new ConfigurationException(e);
+		} catch (IOException e) {
+			throw new ConfigurationException(e);
+		}
+	}
+
+	/**
+	 * Starts watching the keystore file on a daemon thread, reloading it when it changes. If the changed file cannot
+	 * be read the current keys are kept. Calling it again does nothing.
+	 */
+	public synchronized void startWatching() {
+		if (watcher != null) {
+			return;
+		}
+
+		final Path file = Paths.get(path).toAbsolutePath().normalize();
+		try {
+			KeyFileWatcher keyFileWatcher = new KeyFileWatcher("dxsecurity-keystore-watcher",
+					new KeyFileWatcher.Listener() {
+						@Override
+						public void fileChanged(Path changed) {
+							if (changed.equals(file)) {
+								reloadKeepingCurrent();
+							}
+						}
+
+						@Override
+						public void eventsLost(Path directory) {
+							reloadKeepingCurrent();
+						}
+					});
+			keyFileWatcher.watch(file.getParent());
+			keyFileWatcher.start();
+
+			watcher = keyFileWatcher;
+		} catch (IOException e) {
+			throw new ConfigurationException(e);
+		}
+	}
+
+	private void reloadKeepingCurrent() {
+		try {
+			reload();
+		} catch (RuntimeException e) {
+			logger.warn("Could not reload the keystore " + path + ", keeping the current keys.", e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getPrivateKeyAlias() {
+		return privateKeyAlias;
+	}
+
+	public String getSecretKeyAlias() {
+		return secretKeyAlias;
+	}
+
+	/**
+	 * The alias of the secret key used by the HMAC tokens, protected by the same password as the private key.
+	 */
+	public synchronized void setSecretKeyAlias(String secretKeyAlias) {
+		this.secretKeyAlias = secretKeyAlias;
+		this.index = null;
+		fireKeysChanged();
+	}
+
+	private static class KeyIndex {
+
+		private final Map<String, PublicKey> publicKeys;
+		private final PrivateKey privateKey;
+		private final SecretKey secretKey;
+
+		KeyIndex(Map<String, PublicKey> publicKeys, PrivateKey privateKey, SecretKey secretKey) {
+			this.publicKeys = publicKeys;
+			this.privateKey = privateKey;
+			this.secretKey = secretKey;
+		}
+	}
+}
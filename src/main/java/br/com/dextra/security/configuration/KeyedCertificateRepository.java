@@ -0,0 +1,31 @@
+package br.com.dextra.security.configuration;
+
+import java.security.PublicKey;
+
+import javax.crypto.SecretKey;
+
+/**
+ * A {@link CertificateRepository} that holds several keys per provider, told apart by a key id written on the tokens.
+ * Public keys are looked up by provider and key id, so each provider may number its keys on its own. The keys of
+ * tokens without a key id are still the ones of {@link #getPublicKeyFor(String)} and
+ * {@link SecretKeyRepository#getSecretKey()}.
+ */
+public interface KeyedCertificateRepository extends CertificateRepository {
+
+	/**
+	 * @return The key id of {@link #getPrivateKey()}, written on every token signed with it.
+	 */
+	String getPrivateKeyId();
+
+	/**
+	 * @param timestamp The timestamp of the token, in epoch milliseconds.
+	 * @return The key or <code>null</code> if it is unknown or was retired before the timestamp.
+	 */
+	PublicKey getPublicKeyFor(String provider, String keyId, long timestamp);
+
+	/**
+	 * @param timestamp The timestamp of the token, in epoch milliseconds.
+	 * @return The secret key or <code>null</code> if it is unknown or was retired before the timestamp.
+	 */
+	SecretKey getSecretKeyFor(String keyId, long timestamp);
+}
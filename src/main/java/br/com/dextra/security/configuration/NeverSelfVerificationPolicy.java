@@ -0,0 +1,11 @@
+package br.com.dextra.security.configuration;
+
+import java.security.PrivateKey;
+
+public class NeverSelfVerificationPolicy implements SelfVerificationPolicy {
+
+	@Override
+	public boolean mustVerify(PrivateKey privateKey) {
+		return false;
+	}
+}
@@ -0,0 +1,369 @@
+package br.com.dextra.security.configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import br.com.dextra.security.TokenFormat;
+import br.com.dextra.security.TokenSource;
+import br.com.dextra.security.cache.RenewalCache;
+import br.com.dextra.security.cache.VerifiedTokenCache;
+import br.com.dextra.security.exceptions.ConfigurationException;
+import br.com.dextra.security.utils.SignatureAlgorithm;
+
+/**
+ * Reads the {@link Configuration} from a <code>.properties</code> file, without starting an interpreter. The keys are
+ * the properties of the configuration:
+ *
+ * <pre>
+ * myProvider = Test
+ * allowedProviders = Other, Another
+ * cookieExpiryTimeout = 1800000
+ * expiryTimeout = 1800000
+ * renewTimeout = 120000
+ * renewJitter = 10000
+ * signatureAlgorithm = DSA
+ * signatureAlgorithm.Other = ECDSA_P256
+ * hmacSelfIssuedTokens = false
+ * compactTimestamps = false
+ * stableCookieName = true
+ * tokenSources = HEADER, COOKIE, QUERY
+ * tokenFormat = V1
+ * metricsDomain = br.com.dextra.security
+ *
+ * # maximum size, 0 or absent disables it
+ * verifiedTokenCache = 10000
+ * # window in milliseconds, 0 disables it
+ * renewalCache = 10000
+ *
+ * # forbidden, writeToken, redirect:/path or the name of a class
+ * notAuthenticatedHandler = forbidden
+ * authenticationFailedHandler = forbidden
+ * authenticationSuccessHandler = writeToken
+ * authenticationExpiredHandler = redirect:/login
+ *
+ * # always, never, first:count, sampled:rate or the name of a class
+ * selfVerificationPolicy = first:100
+ * signatureMismatchHandler = com.example.LogSignatureMismatchHandler
+ * </pre>
+ *
+ * The certificate repository is one of:
+ *
+ * <pre>
+ * certificateRepository = filesystem
+ * certificateRepository.privateKey = /etc/keys/private.key
+ * certificateRepository.publicKeys = /etc/keys/public
+ * certificateRepository.secretKey = /etc/keys/secret.key
+ * certificateRepository.algorithm = DSA
+ * certificateRepository.watch = true
+ * certificateRepository.preload = true
+ *
+ * certificateRepository = keystore
+ * certificateRepository.path = /etc/keys/keystore.p12
+ * certificateRepository.type = PKCS12
+ * certificateRepository.storePassword = changeit
+ * certificateRepository.privateKeyAlias = test
+ * certificateRepository.keyPassword = changeit
+ * certificateRepository.secretKeyAlias = secret
+ * certificateRepository.watch = true
+ * </pre>
+ *
+ * or the name of a class with a default constructor. Unknown keys are refused, so a misspelled key is not silently
+ * ignored.
+ */
+public class PropertiesConfigurationLoader implements ConfigurationLoader {
+
+	private static final String REPOSITORY = "certificateRepository";
+
+	@Override
+	public Configuration load(ClassLoader loader, InputStream in) throws IOException {
+		Properties properties = new Properties();
+		properties.load(new InputStreamReader(in, "UTF-8"));
+
+		return load(loader, properties);
+	}
+
+	public Configuration load(ClassLoader loader, Properties properties) {
+		Keys keys = new Keys(properties);
+		Configuration configuration = new Configuration();
+
+		String repository = keys.get(REPOSITORY);
+		if (repository != null) {
+			configuration.setCertificateRepository(createRepository(loader, repository, keys));
+		}
+		boolean watch = Boolean.parseBoolean(keys.get(REPOSITORY + ".watch"));
+		boolean preload = Boolean.parseBoolean(keys.get(REPOSITORY + ".preload"));
+
+		String myProvider = keys.get("myProvider");
+		if (myProvider != null) {
+			configuration.setMyProvider(myProvider);
+		}
+		String allowedProviders = keys.get("allowedProviders");
+		if (allowedProviders != null) {
+			for (String provider : allowedProviders.split(",")) {
+				if (provider.trim().length() > 0) {
+					configuration.addAllowedProvider(provider.trim());
+				}
+			}
+		}
+
+		String value;
+		if ((value = keys.get("cookieExpiryTimeout")) != null) {
+			configuration.setCookieExpiryTimeout((int) toLong("cookieExpiryTimeout", value));
+		}
+		if ((value = keys.get("expiryTimeout")) != null) {
+			configuration.setExpiryTimeout(toLong("expiryTimeout", value));
+		}
+		if ((value = keys.get("renewTimeout")) != null) {
+			configuration.setRenewTimeout(toLong("renewTimeout", value));
+		}
+		if ((value = keys.get("renewJitter")) != null) {
+			configuration.setRenewJitter(toLong("renewJitter", value));
+		}
+
+		if ((value = keys.get("signatureAlgorithm")) != null) {
+			configuration.setSignatureAlgorithm(toAlgorithm(value));
+		}
+		for (String key : keys.withPrefix("signatureAlgorithm.")) {
+			configuration.setSignatureAlgorithm(key.substring("signatureAlgorithm.".length()), toAlgorithm(keys
+					.get(key)));
+		}
+
+		if ((value = keys.get("hmacSelfIssuedTokens")) != null) {
+			configuration.setHmacSelfIssuedTokens(Boolean.parseBoolean(value));
+		}
+		if ((value = keys.get("compactTimestamps")) != null) {
+			configuration.setCompactTimestamps(Boolean.parseBoolean(value));
+		}
+		if ((value = keys.get("stableCookieName")) != null) {
+			configuration.setStableCookieName(Boolean.parseBoolean(value));
+		}
+		if ((value = keys.get("tokenSources")) != null) {
+			List<TokenSource> sources = new ArrayList<TokenSource>();
+			for (String source : value.split(",")) {
+				if (source.trim().length() > 0) {
+					sources.add(toEnum(TokenSource.class, "tokenSources", source.trim()));
+				}
+			}
+			configuration.setTokenSources(sources.toArray(new TokenSource[sources.size()]));
+		}
+		if ((value = keys.get("tokenFormat")) != null) {
+			configuration.setTokenFormat(toEnum(TokenFormat.class, "tokenFormat", value));
+		}
+		if ((value = keys.get("metricsDomain")) != null) {
+			configuration.setMetricsDomain(value);
+		}
+
+		if ((value = keys.get("verifiedTokenCache")) != null) {
+			int maximumSize = (int) toLong("verifiedTokenCache", value);
+			configuration.setVerifiedTokenCache(maximumSize > 0 ? new VerifiedTokenCache(maximumSize) : null);
+		}
+		if ((value = keys.get("renewalCache")) != null) {
+			long window = toLong("renewalCache", value);
+			configuration.setRenewalCache(window > 0 ? new RenewalCache(window) : null);
+		}
+
+		if ((value = keys.get("notAuthenticatedHandler")) != null) {
+			configuration.setNotAuthenticatedHandler(createHandler(loader, value));
+		}
+		if ((value = keys.get("authenticationFailedHandler")) != null) {
+			configuration.setAuthenticationFailedHandler(createHandler(loader, value));
+		}
+		if ((value = keys.get("authenticationSuccessHandler")) != null) {
+			configuration.setAuthenticationSuccessHandler(createHandler(loader, value));
+		}
+		if ((value = keys.get("authenticationExpiredHandler")) != null) {
+			configuration.setAuthenticationExpiredHandler(createHandler(loader, value));
+		}
+
+		if ((value = keys.get("selfVerificationPolicy")) != null) {
+			configuration.setSelfVerificationPolicy(createPolicy(loader, value));
+		}
+		if ((value = keys.get("signatureMismatchHandler")) != null) {
+			configuration.setSignatureMismatchHandler(newInstance(loader, value, SignatureMismatchHandler.class));
+		}
+
+		Set<String> unknown = keys.unused();
+		if (!unknown.isEmpty()) {
+			throw new ConfigurationException("Unknown configuration keys : " + unknown);
+		}
+
+		startRepository(configuration.getCertificateRepository(), watch, preload);
+
+		return configuration;
+	}
+
+	private CertificateRepository createRepository(ClassLoader loader, String type, Keys keys) {
+		if (type.equals("filesystem")) {
+			String algorithm = keys.get(REPOSITORY + ".algorithm");
+			FileSystemCertificateRepository repository = new FileSystemCertificateRepository(keys.require(REPOSITORY
+					+ ".privateKey"), keys.require(REPOSITORY + ".publicKeys"), algorithm == null
+					? SignatureAlgorithm.DSA : toAlgorithm(algorithm));
+
+			String secretKey = keys.get(REPOSITORY + ".secretKey");
+			if (secretKey != null) {
+				repository.setSecretKeyPath(secretKey);
+			}
+			return repository;
+		}
+
+		if (type.equals("keystore")) {
+			String storePassword = keys.get(REPOSITORY + ".storePassword");
+			String keyPassword = keys.get(REPOSITORY + ".keyPassword");
+			String storeType = keys.get(REPOSITORY + ".type");
+
+			KeyStoreCertificateRepository repository = new KeyStoreCertificateRepository(keys.require(REPOSITORY
+					+ ".path"), storeType == null ? KeyStoreCertificateRepository.DEFAULT_TYPE : storeType,
+					storePassword, keys.require(REPOSITORY + ".privateKeyAlias"), keyPassword == null ? storePassword
+							: keyPassword);
+
+			String secretKeyAlias = keys.get(REPOSITORY + ".secretKeyAlias");
+			if (secretKeyAlias != null) {
+				repository.setSecretKeyAlias(secretKeyAlias);
+			}
+			return repository;
+		}
+
+		return newInstance(loader, type, CertificateRepository.class);
+	}
+
+	private void startRepository(CertificateRepository repository, boolean watch, boolean preload) {
+		if (repository instanceof FileSystemCertificateRepository) {
+			if (watch) {
+				((FileSystemCertificateRepository) repository).startWatching();
+			}
+			if (preload) {
+				((FileSystemCertificateRepository) repository).preload();
+			}
+		} else if (repository instanceof KeyStoreCertificateRepository) {
+			if (watch) {
+				((KeyStoreCertificateRepository) repository).startWatching();
+			}
+		}
+	}
+
+	private ResponseHandler createHandler(ClassLoader loader, String value) {
+		if (value.equals("forbidden")) {
+			return new ForbiddenResponseHandler();
+		}
+		if (value.equals("writeToken")) {
+			return new WriteTokenOnResponseResponseHandler();
+		}
+		if (value.startsWith("redirect:")) {
+			return new RedirectResponseHandler(value.substring("redirect:".length()));
+		}
+		return newInstance(loader, value, ResponseHandler.class);
+	}
+
+	private SelfVerificationPolicy createPolicy(ClassLoader loader, String value) {
+		if (value.equals("always")) {
+			return new AlwaysSelfVerificationPolicy();
+		}
+		if (value.equals("never")) {
+			return new NeverSelfVerificationPolicy();
+		}
+		if (value.startsWith("first:")) {
+			return new FirstSignaturesSelfVerificationPolicy((int) toLong("selfVerificationPolicy", value
+					.substring("first:".length())));
+		}
+		if (value.startsWith("sampled:")) {
+			try {
+				return new SampledSelfVerificationPolicy(Double.parseDouble(value.substring("sampled:".length())));
+			} catch (NumberFormatException e) {
+				throw new ConfigurationException("Invalid sampling rate on selfVerificationPolicy : " + value);
+			}
+		}
+		return newInstance(loader, value, SelfVerificationPolicy.class);
+	}
+
+	private static <T> T newInstance(ClassLoader loader, String className, Class<T> type) {
+		try {
+			return type.cast(Class.forName(className, true, loader).getDeclaredConstructor().newInstance());
+		} catch (ClassNotFoundException e) {
+			throw new ConfigurationException(e);
+		} catch (NoSuchMethodException e) {
+			throw new ConfigurationException(className + " has no constructor without arguments.");
+		} catch (InvocationTargetException e) {
+			throw new ConfigurationException(e.getCause());
+		} catch (InstantiationException e) {
+			throw new ConfigurationException(e);
+		} catch (IllegalAccessException e) {
+			throw new ConfigurationException(e);
+		} catch (ClassCastException e) {
+			throw new ConfigurationException(className + " is not a " + type.getSimpleName() + ".");
+		}
+	}
+
+	private static long toLong(String key, String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException("Invalid number on " + key + " : " + value);
+		}
+	}
+
+	private static SignatureAlgorithm toAlgorithm(String value) {
+		return toEnum(SignatureAlgorithm.class, "signatureAlgorithm", value);
+	}
+
+	private static <T extends Enum<T>> T toEnum(Class<T> type, String key, String value) {
+		try {
+			return Enum.valueOf(type, value);
+		} catch (IllegalArgumentException e) {
+			throw new ConfigurationException("Invalid value on " + key + " : " + value);
+		}
+	}
+
+	/**
+	 * The trimmed values of the properties, remembering which keys were read.
+	 */
+	private static class Keys {
+
+		private final Properties properties;
+		private final Set<String> used = new HashSet<String>();
+
+		Keys(Properties properties) {
+			this.properties = properties;
+		}
+
+		String get(String key) {
+			used.add(key);
+			String value = properties.getProperty(key);
+			if (value == null) {
+				return null;
+			}
+			value = value.trim();
+			return value.length() == 0 ? null : value;
+		}
+
+		String require(String key) {
+			String value = get(key);
+			if (value == null) {
+				throw new ConfigurationException("The configuration key " + key + " is required.");
+			}
+			return value;
+		}
+
+		Set<String> withPrefix(String prefix) {
+			Set<String> result = new HashSet<String>();
+			for (String key : properties.stringPropertyNames()) {
+				if (key.startsWith(prefix)) {
+					result.add(key);
+				}
+			}
+			return result;
+		}
+
+		Set<String> unused() {
+			Set<String> result = new HashSet<String>(properties.stringPropertyNames());
+			result.removeAll(used);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package br.com.dextra.security.configuration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.SecretKey;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+import br.com.dextra.security.utils.KeyIdUtil;
+
+/**
+ * Keeps a set of keys per key id, each set in its own {@link CertificateRepository}, so the keys can be rotated
+ * without invalidating the tokens already issued. New tokens are signed with the private key of the active key id and
+ * carry it; tokens are verified with the keys of the key id they carry.
+ * <p>
+ * To rotate, add the new keys with {@link #addKey(String, CertificateRepository)}, make them active with
+ * {@link #setActiveKeyId(String)} and retire the old ones with {@link #retireKey(String, long)}. A retired key still
+ * verifies the tokens issued before its retirement, which stop being accepted on their own as they expire, so the
+ * sessions move to the new key as they are renewed instead of all at once. Tokens without a key id are verified with
+ * the keys of the active key id.
+ * <p>
+ * Key ids are looked up by provider. A provider that rotates its keys on its own schedule has its public keys added
+ * with {@link #addPublicKey(String, String, PublicKey)}, under key ids of its own which never collide with the ones of
+ * this application; its tokens are then only verified with those keys. The key sets of
+ * {@link #addKey(String, CertificateRepository)} serve the providers without key ids of their own.
+ * <p>
+ * The {@link KeyChangeListener} is told when a key is replaced, retired or removed, when the active key changes and
+ * when the keys of a key set change.
+ */
+public class RotatingCertificateRepository implements KeyedCertificateRepository, SecretKeyRepository,
+		SignatureAlgorithmAware, KeyChangeAware, Closeable {
+
+	private final ConcurrentMap<String, KeyEntry> keys = new ConcurrentHashMap<String, KeyEntry>();
+	private final ConcurrentMap<String, ConcurrentMap<String, PublicKeyEntry>> providerKeys =
+			new ConcurrentHashMap<String, ConcurrentMap<String, PublicKeyEntry>>();
+
+	private volatile String activeKeyId;
+
+	private volatile SignatureAlgorithmSelector signatureAlgorithmSelector;
+	private volatile KeyChangeListener keyChangeListener;
+
+	public RotatingCertificateRepository(String activeKeyId, CertificateRepository activeRepository) {
+		addKey(activeKeyId, activeRepository);
+		this.activeKeyId = activeKeyId;
+	}
+
+	public void addKey(String keyId, CertificateRepository repository) {
+		KeyIdUtil.validate(keyId);
+		if (repository == null) {
+			throw new ConfigurationException("A certificate repository is required for the key " + keyId + ".");
+		}
+		if (signatureAlgorithmSelector != null && repository instanceof SignatureAlgorithmAware) {
+			((SignatureAlgorithmAware) repository).setSignatureAlgorithmSelector(signatureAlgorithmSelector);
+		}
+		if (repository instanceof KeyChangeAware) {
+			((KeyChangeAware) repository).setKeyChangeListener(keyChangeListener);
+		}
+		if (keys.put(keyId, new KeyEntry(repository)) != null) {
+			fireKeysChanged();
+		}
+	}
+
+	public void setActiveKeyId(String keyId) {
+		KeyEntry entry = getEntry(keyId);
+		entry.retiredAt = Long.MAX_VALUE;
+		if (!keyId.equals(activeKeyId)) {
+			this.activeKeyId = keyId;
+			fireKeysChanged();
+		}
+	}
+
+	/**
+	 * From the given time on, tokens signed with the key are only accepted if they were issued before it.
+	 */
+	public void retireKey(String keyId, long retiredAt) {
+		if (keyId.equals(activeKeyId)) {
+			throw new ConfigurationException("The active key can not be retired : " + keyId);
+		}
+		getEntry(keyId).retiredAt = retiredAt;
+		fireKeysChanged();
+	}
+
+	public void retireKey(String keyId, Date retiredAt) {
+		retireKey(keyId, retiredAt.getTime());
+	}
+
+	public void removeKey(String keyId) {
+		if (keyId.equals(activeKeyId)) {
+			throw new ConfigurationException("The active key can not be removed : " + keyId);
+		}
+		if (keys.remove(keyId) != null) {
+			fireKeysChanged();
+		}
+	}
+
+	/**
+	 * Adds a public key of the provider, used for the tokens of the provider carrying the key id.
+	 */
+	public void addPublicKey(String provider, String keyId, PublicKey publicKey) {
+		KeyIdUtil.validate(keyId);
+		if (publicKey == null) {
+			throw new ConfigurationException("A public key is required for the key " + keyId + " of " + provider + ".");
+		}
+
+		ConcurrentMap<String, PublicKeyEntry> entries = providerKeys.get(provider);
+		if (entries == null) {
+			ConcurrentMap<String, PublicKeyEntry> created = new ConcurrentHashMap<String, PublicKeyEntry>();
+			entries = providerKeys.putIfAbsent(provider, created);
+			if (entries == null) {
+				entries = created;
+			}
+		}
+		if (entries.put(keyId, new PublicKeyEntry(publicKey)) != null) {
+			fireKeysChanged();
+		}
+	}
+
+	/**
+	 * From the given time on, tokens of the provider signed with the key are only accepted if they were issued before
+	 * it.
+	 */
+	public void retirePublicKey(String provider, String keyId, long retiredAt) {
+		getPublicKeyEntry(provider, keyId).retiredAt = retiredAt;
+		fireKeysChanged();
+	}
+
+	public void removePublicKey(String provider, String keyId) {
+		ConcurrentMap<String, PublicKeyEntry> entries = providerKeys.get(provider);
+		if (entries != null && entries.remove(keyId) != null) {
+			fireKeysChanged();
+		}
+	}
+
+	private PublicKeyEntry getPublicKeyEntry(String provider, String keyId) {
+		ConcurrentMap<String, PublicKeyEntry> entries = providerKeys.get(provider);
+		PublicKeyEntry entry = entries == null ? null : entries.get(keyId);
+		if (entry == null) {
+			throw new ConfigurationException("Unknown key of " + provider + " : " + keyId);
+		}
+		return entry;
+	}
+
+	public String getActiveKeyId() {
+		return activeKeyId;
+	}
+
+	private KeyEntry getEntry(String keyId) {
+		KeyEntry entry = keys.get(keyId);
+		if (entry == null) {
+			throw new ConfigurationException("Unknown key : " + keyId);
+		}
+		return entry;
+	}
+
+	private CertificateRepository getActiveRepository() {
+		return keys.get(activeKeyId).repository;
+	}
+
+	private CertificateRepository getRepository(String keyId, long timestamp) {
+		KeyEntry entry = keys.get(keyId);
+		if (entry == null || timestamp >= entry.retiredAt) {
+			return null;
+		}
+		return entry.repository;
+	}
+
+	@Override
+	public String getPrivateKeyId() {
+		return activeKeyId;
+	}
+
+	@Override
+	public PrivateKey getPrivateKey() {
+		return getActiveRepository().getPrivateKey();
+	}
+
+	@Override
+	public PublicKey getPublicKeyFor(String provider) {
+		return getActiveRepository().getPublicKeyFor(provider);
+	}
+
+	@Override
+	public PublicKey getPublicKeyFor(String provider, String keyId, long timestamp) {
+		ConcurrentMap<String, PublicKeyEntry> entries = providerKeys.get(provider);
+		if (entries != null) {
+			PublicKeyEntry entry = entries.get(keyId);
+			return entry == null || timestamp >= entry.retiredAt ? null : entry.publicKey;
+		}
+
+		CertificateRepository repository = getRepository(keyId, timestamp);
+		return repository == null ? null : repository.getPublicKeyFor(provider);
+	}
+
+	@Override
+	public SecretKey getSecretKey() {
+		return getSecretKey(getActiveRepository());
+	}
+
+	@Override
+	public SecretKey getSecretKeyFor(String keyId, long timestamp) {
+		CertificateRepository repository = getRepository(keyId, timestamp);
+		return repository == null ? null : getSecretKey(repository);
+	}
+
+	private static SecretKey getSecretKey(CertificateRepository repository) {
+		if (repository instanceof SecretKeyRepository) {
+			return ((SecretKeyRepository) repository).getSecretKey();
+		}
+		return null;
+	}
+
+	@Override
+	public void setSignatureAlgorithmSelector(SignatureAlgorithmSelector selector) {
+		this.signatureAlgorithmSelector = selector;
+		for (KeyEntry entry : keys.values()) {
+			if (entry.repository instanceof SignatureAlgorithmAware) {
+				((SignatureAlgorithmAware) entry.repository).setSignatureAlgorithmSelector(selector);
+			}
+		}
+	}
+
+	/**
+	 * Also given to the key sets that are {@link KeyChangeAware}, so a key file reloaded by one of them is told too.
+	 */
+	@Override
+	public void setKeyChangeListener(KeyChangeListener listener) {
+		this.keyChangeListener = listener;
+		for (KeyEntry entry : keys.values()) {
+			if (entry.repository instanceof KeyChangeAware) {
+				((KeyChangeAware) entry.repository).setKeyChangeListener(listener);
+			}
+		}
+	}
+
+	private void fireKeysChanged() {
+		KeyChangeListener listener = keyChangeListener;
+		if (listener != null) {
+			listener.keysChanged();
+		}
+	}
+
+	@Override
+	public void clearCaches() {
+		for (KeyEntry entry : keys.values()) {
+			entry.repository.clearCaches();
+		}
+		fireKeysChanged();
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (KeyEntry entry : keys.values()) {
+			if (entry.repository instanceof Closeable) {
+				((Closeable) entry.repository).close();
+			}
+		}
+	}
+
+	private static class PublicKeyEntry {
+
+		private final PublicKey publicKey;
+		private volatile long retiredAt = Long.MAX_VALUE;
+
+		PublicKeyEntry(PublicKey publicKey) {
+			this.publicKey = publicKey;
+		}
+	}
+
+	private static class KeyEntry {
+
+		private final CertificateRepository repository;
+		private volatile long retiredAt = Long.MAX_VALUE;
+
+		KeyEntry(CertificateRepository repository) {
+			this.repository = repository;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package br.com.dextra.security.configuration;
+
+import java.security.PrivateKey;
+import java.util.Random;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+
+/**
+ * Verifies a random sample of the signatures. The rate goes from <code>0</code> (never) to <code>1</code> (always).
+ */
+public class SampledSelfVerificationPolicy implements SelfVerificationPolicy {
+
+	private final double rate;
+	private final Random random = new Random();
+
+	public SampledSelfVerificationPolicy(double rate) {
+		if (rate < 0 || rate > 1) {
+			throw new ConfigurationException("The self verification sample rate must be between 0 and 1.");
+		}
+		this.rate = rate;
+	}
+
+	@Override
+	public boolean mustVerify(PrivateKey privateKey) {
+		return random.nextDouble() < rate;
+	}
+}
@@ -0,0 +1,17 @@
+package br.com.dextra.security.configuration;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Implemented by the {@link CertificateRepository} implementations that also hold the secret used to authenticate,
+ * with HMAC, the tokens issued and verified by this same application.
+ */
+public interface SecretKeyRepository {
+
+	public static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	/**
+	 * @return The secret key or <code>null</code> if none was configured.
+	 */
+	public SecretKey getSecretKey();
+}
@@ -0,0 +1,13 @@
+package br.com.dextra.security.configuration;
+
+import java.security.PrivateKey;
+
+/**
+ * Decides whether a signature just produced by {@link br.com.dextra.security.utils.AuthenticationUtil} must be
+ * verified against the public key of the signing provider before being handed out. A failed verification is reported
+ * to the configured {@link SignatureMismatchHandler}.
+ */
+public interface SelfVerificationPolicy {
+
+	boolean mustVerify(PrivateKey privateKey);
+}
@@ -0,0 +1,11 @@
+package br.com.dextra.security.configuration;
+
+/**
+ * Implemented by the {@link CertificateRepository} implementations that decode keys of several algorithms. The
+ * {@link Configuration} registers itself as the selector when the repository is set; the algorithm the repository was
+ * built with is still used for every provider the selector has no preference for.
+ */
+public interface SignatureAlgorithmAware {
+
+	void setSignatureAlgorithmSelector(SignatureAlgorithmSelector selector);
+}
@@ -0,0 +1,14 @@
+package br.com.dextra.security.configuration;
+
+import br.com.dextra.security.utils.SignatureAlgorithm;
+
+/**
+ * Tells which {@link SignatureAlgorithm} is used by the private key of this application and by the public key of each
+ * provider. A selector answers <code>null</code> when it has no preference, leaving the choice to the repository.
+ */
+public interface SignatureAlgorithmSelector {
+
+	SignatureAlgorithm getSignatureAlgorithm();
+
+	SignatureAlgorithm getSignatureAlgorithmFor(String provider);
+}
@@ -0,0 +1,12 @@
+package br.com.dextra.security.configuration;
+
+import br.com.dextra.security.Credential;
+
+/**
+ * Receives the signatures that failed the verification required by the {@link SelfVerificationPolicy}. Implementations
+ * may throw a runtime exception to abort the signing.
+ */
+public interface SignatureMismatchHandler {
+
+	void onMismatch(Credential credential, String signature);
+}
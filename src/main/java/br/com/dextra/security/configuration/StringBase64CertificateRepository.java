@@ -1,55 +1,68 @@
 package br.com.dextra.security.configuration;
 
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.apache.commons.codec.binary.Base64;
 
-public class StringBase64CertificateRepository implements CertificateRepository {
+import br.com.dextra.security.utils.SignatureAlgorithm;
+
+/**
+ * Keeps keys configured as Base64 strings. The keys are decoded as soon as they are configured, with the algorithm
+ * given on the call or, when none is given, with the one chosen by the current {@link SignatureAlgorithmSelector},
+ * falling back to the algorithm the repository was built with.
+ */
+public class StringBase64CertificateRepository implements CertificateRepository, SecretKeyRepository,
+        SignatureAlgorithmAware {
 
     private PrivateKey privateKey;
+    private SecretKey secretKey;
     private Map<String, PublicKey> publicKeys = new HashMap<String, PublicKey>();
+    private final SignatureAlgorithm signatureAlgorithm;
+    private SignatureAlgorithmSelector signatureAlgorithmSelector;
+
+    public StringBase64CertificateRepository() {
+        this(SignatureAlgorithm.DSA);
+    }
+
+    public StringBase64CertificateRepository(SignatureAlgorithm signatureAlgorithm) {
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.signatureAlgorithmSelector = new FixedSignatureAlgorithmSelector(signatureAlgorithm);
+    }
 
     public void configurePrivateKey(String encoded) {
-        try {
-            byte[] encKey = decode(encoded);
-            PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(encKey);
-            KeyFactory keyFactory = KeyFactory.getInstance("DSA", "SUN");
+        configurePrivateKey(encoded, signatureAlgorithmSelector.getSignatureAlgorithm());
+    }
 
-            privateKey = keyFactory.generatePrivate(privateKeySpec);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        } catch (NoSuchProviderException e) {
-            throw new RuntimeException(e);
+    public void configurePrivateKey(String encoded, SignatureAlgorithm signatureAlgorithm) {
+        try {
+            privateKey = signatureAlgorithm.decodePrivateKey(decode(encoded));
         } catch (InvalidKeySpecException e) {
             throw new RuntimeException(e);
         }
     }
 
+    public void configureSecretKey(String encoded) {
+        secretKey = new SecretKeySpec(decode(encoded), HMAC_ALGORITHM);
+    }
+
     protected byte[] decode(String encoded) {
         return Base64.decodeBase64(encoded.getBytes());
     }
 
     public void configurePublicKey(String provider, String encoded) {
-        try {
-            byte[] encKey = decode(encoded);
-            X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(encKey);
-            KeyFactory keyFactory = KeyFactory.getInstance("DSA", "SUN");
-            PublicKey publicKey = keyFactory.generatePublic(pubKeySpec);
+        configurePublicKey(provider, encoded, signatureAlgorithmSelector.getSignatureAlgorithmFor(provider));
+    }
 
-            publicKeys.put(provider, publicKey);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        } catch (NoSuchProviderException e) {
-            throw new RuntimeException(e);
+    public void configurePublicKey(String provider, String encoded, SignatureAlgorithm signatureAlgorithm) {
+        try {
+            publicKeys.put(provider, signatureAlgorithm.decodePublicKey(decode(encoded)));
         } catch (InvalidKeySpecException e) {
             throw new RuntimeException(e);
         }
@@ -60,11 +73,21 @@ public class StringBase64CertificateRepository implements CertificateRepository
         return privateKey;
     }
 
+    @Override
+    public SecretKey getSecretKey() {
+        return secretKey;
+    }
+
     @Override
     public PublicKey getPublicKeyFor(String provider) {
         return publicKeys.get(provider);
     }
 
+    @Override
+    public void setSignatureAlgorithmSelector(SignatureAlgorithmSelector selector) {
+        this.signatureAlgorithmSelector = new FallbackSignatureAlgorithmSelector(selector, signatureAlgorithm);
+    }
+
     @Override
     public void clearCaches() {
     }
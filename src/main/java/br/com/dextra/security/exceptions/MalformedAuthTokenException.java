@@ -0,0 +1,12 @@
+package br.com.dextra.security.exceptions;
+
+import static br.com.dextra.security.utils.StringConcatUtil.concat;
+
+public class MalformedAuthTokenException extends SecurityException {
+
+	private static final long serialVersionUID = -2213519837405843201L;
+
+	public MalformedAuthTokenException(String token) {
+		super(concat("Malformed auth token : ", token));
+	}
+}
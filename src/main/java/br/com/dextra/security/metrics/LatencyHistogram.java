@@ -0,0 +1,123 @@
+package br.com.dextra.security.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in nanoseconds. Each bucket holds the values between two powers of two, so the
+ * percentiles are upper bounds at most twice the real value, which is enough to tell where the time goes at the cost
+ * of a few atomic increments per value.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+	private static final int BUCKETS = 64;
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * Bucket 0 holds zero and bucket <code>i</code> the values of <code>[2^(i-1), 2^i)</code>.
+	 */
+	static int bucketOf(long nanos) {
+		return BUCKETS - Long.numberOfLeadingZeros(nanos);
+	}
+
+	/**
+	 * @param percentile Between 0 and 1.
+	 * @return The upper bound, in nanoseconds, of the bucket that holds the percentile, but never more than the
+	 *         maximum recorded value.
+	 */
+	public long getPercentileNanos(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				long upperBound = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(upperBound, maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	@Override
+	public double getTotalMillis() {
+		return totalNanos.get() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long n = count.get();
+		return n == 0 ? 0 : totalNanos.get() / NANOS_PER_MICRO / n;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return maxNanos.get() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getMedianMicros() {
+		return getPercentileNanos(0.5) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getP90Micros() {
+		return getPercentileNanos(0.9) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return getPercentileNanos(0.99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getP999Micros() {
+		return getPercentileNanos(0.999) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram [count=" + getCount() + ", mean=" + getMeanMicros() + "us, p99=" + getP99Micros()
+				+ "us, max=" + getMaxMicros() + "us]";
+	}
+}
@@ -0,0 +1,20 @@
+package br.com.dextra.security.metrics;
+
+public interface LatencyHistogramMBean {
+
+	long getCount();
+
+	double getTotalMillis();
+
+	double getMeanMicros();
+
+	double getMaxMicros();
+
+	double getMedianMicros();
+
+	double getP90Micros();
+
+	double getP99Micros();
+
+	double getP999Micros();
+}
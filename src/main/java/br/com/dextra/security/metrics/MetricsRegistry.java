@@ -0,0 +1,288 @@
+package br.com.dextra.security.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency histograms of the {@link Operation}s, by provider and {@link Outcome}. Recording a value costs two calls to
+ * {@link System#nanoTime()}, a lookup of the provider and a few atomic increments, and allocates nothing once the
+ * histogram exists, so it is enabled by default; the histograms can be read directly or exported as MBeans named
+ * <code>&lt;domain&gt;:type=Latency,operation=verify,provider="provider",outcome=success</code>.
+ * <p>
+ * The providers come from the tokens, so the number of histograms is bounded: after {@link #getMaximumSeries()} the
+ * values of new providers are recorded under {@link #OTHER_PROVIDERS}.
+ */
+public class MetricsRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+	public static final String DEFAULT_DOMAIN = "br.com.dextra.security";
+
+	public static final int DEFAULT_MAXIMUM_SERIES = 1000;
+
+	public static final String OTHER_PROVIDERS = "(other)";
+
+	private static final int OUTCOMES = Outcome.values().length;
+	private static final int SLOTS = Operation.values().length * OUTCOMES;
+
+	private static final MetricsRegistry instance = new MetricsRegistry();
+
+	private final ConcurrentMap<Series, LatencyHistogram> histograms = new ConcurrentHashMap<Series, LatencyHistogram>();
+
+	/**
+	 * The histograms already used by {@link #record(Operation, String, Outcome, long)}, by provider and then by
+	 * operation and outcome, see {@link #slotOf(Operation, Outcome)}. Filled from {@link #histograms}.
+	 */
+	private final ConcurrentMap<String, LatencyHistogram[]> slots = new ConcurrentHashMap<String, LatencyHistogram[]>();
+	private volatile LatencyHistogram[] unboundSlots = new LatencyHistogram[SLOTS];
+
+	private volatile boolean enabled = true;
+	private volatile int maximumSeries = DEFAULT_MAXIMUM_SERIES;
+
+	private final Object exportLock = new Object();
+	private volatile String domain;
+	private int exports;
+
+	public static MetricsRegistry getInstance() {
+		return instance;
+	}
+
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the time elapsed since <code>start</code>, as returned by {@link #start()}.
+	 *
+	 * @param provider <code>null</code> for the operations that are not bound to a provider.
+	 */
+	public void record(Operation operation, String provider, Outcome outcome, long start) {
+		if (enabled) {
+			long elapsed = System.nanoTime() - start;
+
+			LatencyHistogram[] histogramSlots = provider == null ? unboundSlots : slots.get(provider);
+			if (histogramSlots == null) {
+				histogramSlots = getSlots(provider);
+			}
+
+			int slot = slotOf(operation, outcome);
+			LatencyHistogram histogram = histogramSlots[slot];
+			if (histogram == null) {
+				histogram = getHistogram(operation, histogramSlots == slots.get(OTHER_PROVIDERS) ? OTHER_PROVIDERS
+						: provider, outcome);
+				histogramSlots[slot] = histogram;
+			}
+			histogram.record(elapsed);
+		}
+	}
+
+	/**
+	 * The slots of a provider seen for the first time. Past {@link #getMaximumSeries()} providers the slots of
+	 * {@link #OTHER_PROVIDERS} are shared, so the slots are as bounded as the histograms.
+	 */
+	private LatencyHistogram[] getSlots(String provider) {
+		String key = slots.size() >= maximumSeries ? OTHER_PROVIDERS : provider;
+
+		LatencyHistogram[] histogramSlots = slots.get(key);
+		if (histogramSlots == null) {
+			LatencyHistogram[] created = new LatencyHistogram[SLOTS];
+			histogramSlots = slots.putIfAbsent(key, created);
+			if (histogramSlots == null) {
+				histogramSlots = created;
+			}
+		}
+		return histogramSlots;
+	}
+
+	private static int slotOf(Operation operation, Outcome outcome) {
+		return operation.ordinal() * OUTCOMES + outcome.ordinal();
+	}
+
+	public LatencyHistogram getHistogram(Operation operation, String provider, Outcome outcome) {
+		Series series = new Series(operation, provider, outcome);
+
+		LatencyHistogram histogram = histograms.get(series);
+		if (histogram == null) {
+			if (provider != null && histograms.size() >= maximumSeries) {
+				series = new Series(operation, OTHER_PROVIDERS, outcome);
+				histogram = histograms.get(series);
+				if (histogram != null) {
+					return histogram;
+				}
+			}
+
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(series, created);
+			if (histogram == null) {
+				histogram = created;
+
+				String exportedTo = domain;
+				if (exportedTo != null) {
+					register(exportedTo, series, created);
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return The histograms recorded so far, by the name they are exported with.
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		Map<String, LatencyHistogram> result = new HashMap<String, LatencyHistogram>();
+		for (Entry<Series, LatencyHistogram> entry : histograms.entrySet()) {
+			result.put(entry.getKey().toString(), entry.getValue());
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Registers the histograms, and the ones created later, on the platform MBean server. Every call must be paired
+	 * with a call to {@link #unexport()}, the MBeans are unregistered after the last one.
+	 */
+	public void export(String domain) {
+		synchronized (exportLock) {
+			if (exports++ > 0) {
+				if (!domain.equals(this.domain)) {
+					logger.warn("Metrics already exported to {}, ignoring {}.", this.domain, domain);
+				}
+				return;
+			}
+
+			this.domain = domain;
+			for (Entry<Series, LatencyHistogram> entry : histograms.entrySet()) {
+				register(domain, entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	public void unexport() {
+		synchronized (exportLock) {
+			if (exports == 0 || --exports > 0) {
+				return;
+			}
+
+			String exportedTo = domain;
+			domain = null;
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (Series series : histograms.keySet()) {
+				try {
+					server.unregisterMBean(series.toObjectName(exportedTo));
+				} catch (InstanceNotFoundException e) {
+					// never registered, or unregistered by someone else
+				} catch (JMException e) {
+					logger.warn("Error while unregistering the metrics of " + series, e);
+				}
+			}
+		}
+	}
+
+	public boolean isExported() {
+		return domain != null;
+	}
+
+	private void register(String domain, Series series, LatencyHistogram histogram) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(histogram, series.toObjectName(domain));
+		} catch (InstanceAlreadyExistsException e) {
+			logger.debug("Metrics of {} already registered.", series);
+		} catch (JMException e) {
+			logger.warn("Error while registering the metrics of " + series, e);
+		}
+	}
+
+	/**
+	 * Drops every histogram recorded so far.
+	 */
+	public void clear() {
+		synchronized (exportLock) {
+			if (domain != null) {
+				throw new IllegalStateException("The metrics can not be cleared while exported.");
+			}
+			histograms.clear();
+			slots.clear();
+			unboundSlots = new LatencyHistogram[SLOTS];
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getMaximumSeries() {
+		return maximumSeries;
+	}
+
+	public void setMaximumSeries(int maximumSeries) {
+		this.maximumSeries = maximumSeries;
+	}
+
+	private static class Series {
+
+		private final Operation operation;
+		private final String provider;
+		private final Outcome outcome;
+
+		Series(Operation operation, String provider, Outcome outcome) {
+			this.operation = operation;
+			this.provider = provider;
+			this.outcome = outcome;
+		}
+
+		ObjectName toObjectName(String domain) throws MalformedObjectNameException {
+			StringBuilder name = new StringBuilder(domain).append(":type=Latency,operation=").append(
+					operation.getName());
+			if (provider != null) {
+				name.append(",provider=").append(ObjectName.quote(provider));
+			}
+			name.append(",outcome=").append(outcome.getName());
+			return new ObjectName(name.toString());
+		}
+
+		@Override
+		public int hashCode() {
+			int result = operation.hashCode();
+			result = 31 * result + (provider == null ? 0 : provider.hashCode());
+			result = 31 * result + outcome.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Series)) {
+				return false;
+			}
+			Series other = (Series) obj;
+			return operation == other.operation && outcome == other.outcome
+					&& (provider == null ? other.provider == null : provider.equals(other.provider));
+		}
+
+		@Override
+		public String toString() {
+			return operation.getName() + (provider == null ? "" : "." + provider) + "." + outcome.getName();
+		}
+	}
+}
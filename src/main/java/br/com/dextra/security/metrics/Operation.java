@@ -0,0 +1,13 @@
+package br.com.dextra.security.metrics;
+
+/**
+ * The steps of the authentication whose latency is measured by the {@link MetricsRegistry}.
+ */
+public enum Operation {
+
+	PARSE, KEY_LOOKUP, VERIFY, SIGN, RENEW;
+
+	public String getName() {
+		return name().toLowerCase();
+	}
+}
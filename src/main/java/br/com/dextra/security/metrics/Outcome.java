@@ -0,0 +1,14 @@
+package br.com.dextra.security.metrics;
+
+/**
+ * How an {@link Operation} ended: {@link #FAILURE} is a negative answer, such as a signature that does not match or a
+ * key that is not found, while {@link #ERROR} is an exception.
+ */
+public enum Outcome {
+
+	SUCCESS, FAILURE, ERROR;
+
+	public String getName() {
+		return name().toLowerCase();
+	}
+}
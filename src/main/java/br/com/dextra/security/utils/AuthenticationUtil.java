@@ -1,32 +1,197 @@
 package br.com.dextra.security.utils;
 
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.Signature;
+import java.security.PublicKey;
 import java.security.SignatureException;
 
+import javax.crypto.SecretKey;
+
 import br.com.dextra.security.Credential;
+import br.com.dextra.security.SignatureScheme;
+import br.com.dextra.security.TokenFormat;
+import br.com.dextra.security.configuration.AlwaysSelfVerificationPolicy;
 import br.com.dextra.security.configuration.CertificateRepository;
+import br.com.dextra.security.configuration.Configuration;
+import br.com.dextra.security.configuration.ExceptionSignatureMismatchHandler;
+import br.com.dextra.security.configuration.KeyedCertificateRepository;
+import br.com.dextra.security.configuration.SecretKeyRepository;
+import br.com.dextra.security.configuration.SelfVerificationPolicy;
+import br.com.dextra.security.configuration.SignatureMismatchHandler;
+import br.com.dextra.security.metrics.MetricsRegistry;
+import br.com.dextra.security.metrics.Operation;
+import br.com.dextra.security.metrics.Outcome;
 
 public class AuthenticationUtil {
 
+	private static final SignatureEngine signatureEngine = new SignatureEngine();
+
+	private static final SelfVerificationPolicy alwaysVerify = new AlwaysSelfVerificationPolicy();
+	private static final SignatureMismatchHandler failOnMismatch = new ExceptionSignatureMismatchHandler();
+
+	private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+
+	/**
+	 * Signs the credential, always verifying the result. Signatures made with a {@link KeyedCertificateRepository}
+	 * carry the id of the key, see {@link KeyIdUtil}.
+	 */
 	public static String sign(Credential data, CertificateRepository certificateRepository) {
-		String authData = data.toString();
+		long start = metrics.start();
+		boolean signed = false;
+		try {
+			String signature = KeyIdUtil.mark(getPrivateKeyId(certificateRepository), sign(data,
+					certificateRepository, alwaysVerify, failOnMismatch));
+			signed = true;
+			return signature;
+		} finally {
+			metrics.record(Operation.SIGN, data.getProvider(), signed ? Outcome.SUCCESS : Outcome.ERROR, start);
+		}
+	}
+
+	/**
+	 * Signs the credential with the repository of the configuration, verifying the result as required by
+	 * {@link Configuration#getSelfVerificationPolicy()}. When {@link Configuration#isHmacSelfIssuedTokens()} is enabled
+	 * the credentials of {@link Configuration#getMyProvider()} are authenticated with HMAC instead.
+	 */
+	public static String sign(Credential data, Configuration configuration) {
+		long start = metrics.start();
+		boolean signed = false;
+		try {
+			String signature = signWith(data, configuration);
+			signed = true;
+			return signature;
+		} finally {
+			metrics.record(Operation.SIGN, data.getProvider(), signed ? Outcome.SUCCESS : Outcome.ERROR, start);
+		}
+	}
+
+	private static String signWith(Credential data, Configuration configuration) {
+		CertificateRepository certificateRepository = configuration.getCertificateRepository();
+		String keyId = getPrivateKeyId(certificateRepository);
+
+		if (configuration.isHmacSelfIssuedTokens() && data.getProvider().equals(configuration.getMyProvider())) {
+			return KeyIdUtil.mark(keyId, SignatureScheme.HMAC.mark(mac(data.getSignedData(), certificateRepository)));
+		}
+
+		return KeyIdUtil.mark(keyId, sign(data, certificateRepository, configuration.getSelfVerificationPolicy(),
+				configuration.getSignatureMismatchHandler()));
+	}
+
+	private static String getPrivateKeyId(CertificateRepository certificateRepository) {
+		if (certificateRepository instanceof KeyedCertificateRepository) {
+			return ((KeyedCertificateRepository) certificateRepository).getPrivateKeyId();
+		}
+		return null;
+	}
 
-		String signature = sign(authData, certificateRepository);
-		if (!verify(data, signature, certificateRepository)) {
-			throw new RuntimeException("Missed public and private keys.");
+	private static String sign(Credential data, CertificateRepository certificateRepository,
+			SelfVerificationPolicy policy, SignatureMismatchHandler mismatchHandler) {
+		String signature = sign(data.getSignedData(), certificateRepository);
+		if (policy.mustVerify(certificateRepository.getPrivateKey())
+				&& !verify(data, signature, certificateRepository)) {
+			mismatchHandler.onMismatch(data, signature);
 		}
 
 		return signature;
 	}
 
+	/**
+	 * Verifies the signature the credential carries, as {@link #verify(Credential, String, Configuration)} does. The
+	 * bytes of {@link Credential#getRawSignature()} go straight to the engine, so parsed {@link TokenFormat#V2} tokens
+	 * are never encoded back to Base64.
+	 */
+	public static boolean verify(Credential authData, Configuration configuration) {
+		return verify(authData, null, true, configuration.getCertificateRepository(), authData.getProvider().equals(
+				configuration.getMyProvider()));
+	}
+
+	/**
+	 * Verifies the signature with the scheme marked on it. HMAC signatures are only accepted on credentials of
+	 * {@link Configuration#getMyProvider()}.
+	 */
+	public static boolean verify(Credential authData, String signature, Configuration configuration) {
+		return verify(authData, signature, false, configuration.getCertificateRepository(), authData.getProvider()
+				.equals(configuration.getMyProvider()));
+	}
+
+	/**
+	 * Verifies the signature with the key it names, if it carries a key id, or with the current key otherwise. Key ids
+	 * are only known by a {@link KeyedCertificateRepository}, which may also refuse retired keys. HMAC signatures are
+	 * never accepted here, as the repository does not tell which provider issued them; they are verified by
+	 * {@link #verify(Credential, String, Configuration)}.
+	 */
 	public static boolean verify(Credential authData, String signature, CertificateRepository certificateRepository) {
+		return verify(authData, signature, false, certificateRepository, false);
+	}
+
+	/**
+	 * @param ownSignature Whether to verify the signature the credential carries instead of the given one.
+	 */
+	private static boolean verify(Credential authData, String signature, boolean ownSignature,
+			CertificateRepository certificateRepository, boolean allowHmac) {
+		long start = metrics.start();
+		Outcome outcome = Outcome.ERROR;
 		try {
-			Signature sig = Signature.getInstance("SHA1withDSA");
-			sig.initVerify(certificateRepository.getPublicKeyFor(authData.getProvider()));
-			sig.update(authData.toString().getBytes());
-			return sig.verify(SignatureEncodingUtil.decode(signature));
+			boolean verified;
+			if (ownSignature) {
+				verified = verifyWith(authData, authData.getKeyId(), authData.getSignatureScheme(), authData
+						.getRawSignature(), certificateRepository, allowHmac);
+			} else {
+				verified = verifyWith(authData, signature, certificateRepository, allowHmac);
+			}
+			outcome = verified ? Outcome.SUCCESS : Outcome.FAILURE;
+			return verified;
+		} finally {
+			metrics.record(Operation.VERIFY, authData.getProvider(), outcome, start);
+		}
+	}
+
+	private static boolean verifyWith(Credential authData, String signature,
+			CertificateRepository certificateRepository, boolean allowHmac) {
+		String keyId = KeyIdUtil.keyIdOf(signature);
+		if (signature == null || keyId != null && !(certificateRepository instanceof KeyedCertificateRepository)) {
+			return false;
+		}
+		String unmarked = KeyIdUtil.unmark(signature);
+		SignatureScheme scheme = SignatureScheme.of(unmarked);
+		return verifyWith(authData, keyId, scheme, SignatureEncodingUtil.decode(scheme.unmark(unmarked)),
+				certificateRepository, allowHmac);
+	}
+
+	private static boolean verifyWith(Credential authData, String keyId, SignatureScheme scheme, byte[] signature,
+			CertificateRepository certificateRepository, boolean allowHmac) {
+		if (signature == null) {
+			return false;
+		}
+		if (keyId != null && !(certificateRepository instanceof KeyedCertificateRepository)) {
+			return false;
+		}
+
+		if (scheme == SignatureScheme.HMAC) {
+			if (!allowHmac) {
+				return false;
+			}
+
+			SecretKey secretKey = keyId == null ? getSecretKey(certificateRepository)
+					: ((KeyedCertificateRepository) certificateRepository).getSecretKeyFor(keyId, authData
+							.getTimestampMillis());
+			return verifyMac(authData.getSignedData(), signature, secretKey);
+		}
+
+		try {
+			String provider = authData.getProvider();
+			PublicKey publicKey = getPublicKeyFor(certificateRepository, provider, keyId, authData
+					.getTimestampMillis());
+			if (keyId == null) {
+				return signatureEngine.verify(provider, publicKey, authData.getSignedData(), signature);
+			}
+
+			if (publicKey == null) {
+				return false;
+			}
+			return signatureEngine.verify(provider + KeyIdUtil.SEPARATOR + keyId, publicKey, authData.getSignedData(),
+					signature);
 		} catch (NoSuchAlgorithmException e) {
 			throw new RuntimeException(e);
 		} catch (InvalidKeyException e) {
@@ -36,12 +201,32 @@ public class AuthenticationUtil {
 		}
 	}
 
+	private static PublicKey getPublicKeyFor(CertificateRepository certificateRepository, String provider,
+			String keyId, long timestamp) {
+		long start = metrics.start();
+		Outcome outcome = Outcome.ERROR;
+		try {
+			PublicKey publicKey;
+			if (keyId == null) {
+				publicKey = certificateRepository.getPublicKeyFor(provider);
+			} else {
+				publicKey = ((KeyedCertificateRepository) certificateRepository).getPublicKeyFor(provider, keyId,
+						timestamp);
+			}
+			outcome = publicKey != null ? Outcome.SUCCESS : Outcome.FAILURE;
+			return publicKey;
+		} finally {
+			metrics.record(Operation.KEY_LOOKUP, provider, outcome, start);
+		}
+	}
+
 	public static String sign(String data, CertificateRepository certificateRepository) {
+		return sign(data.getBytes(), certificateRepository);
+	}
+
+	public static String sign(byte[] data, CertificateRepository certificateRepository) {
 		try {
-			Signature sig = Signature.getInstance("SHA1withDSA");
-			sig.initSign(certificateRepository.getPrivateKey());
-			sig.update(data.getBytes());
-			byte[] signature = sig.sign();
+			byte[] signature = signatureEngine.sign(certificateRepository.getPrivateKey(), data);
 
 			return new String(SignatureEncodingUtil.encode(signature));
 		} catch (NoSuchAlgorithmException e) {
@@ -52,4 +237,46 @@ public class AuthenticationUtil {
 			throw new RuntimeException(e);
 		}
 	}
+
+	public static String mac(String data, CertificateRepository certificateRepository) {
+		return mac(data.getBytes(), certificateRepository);
+	}
+
+	public static String mac(byte[] data, CertificateRepository certificateRepository) {
+		try {
+			byte[] mac = signatureEngine.mac(getSecretKey(certificateRepository), data);
+
+			return new String(SignatureEncodingUtil.encode(mac));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (InvalidKeyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static boolean verifyMac(byte[] data, byte[] mac, SecretKey secretKey) {
+		if (secretKey == null) {
+			return false;
+		}
+
+		try {
+			byte[] expected = signatureEngine.mac(secretKey, data);
+			return MessageDigest.isEqual(expected, mac);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (InvalidKeyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static SecretKey getSecretKey(CertificateRepository certificateRepository) {
+		if (certificateRepository instanceof SecretKeyRepository) {
+			return ((SecretKeyRepository) certificateRepository).getSecretKey();
+		}
+		return null;
+	}
+
+	public static SignatureEngine getSignatureEngine() {
+		return signatureEngine;
+	}
 }
@@ -4,33 +4,41 @@ import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.security.SecureRandom;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
 
 import org.apache.commons.codec.binary.Base64;
 
 import br.com.dextra.security.Credential;
+import br.com.dextra.security.configuration.SecretKeyRepository;
 import br.com.dextra.security.configuration.StringBase64CertificateRepository;
 
 public class GenerateKeysUtil {
 
 	public static void main(String[] args) throws NoSuchAlgorithmException, NoSuchProviderException, IOException {
-		generateAndStoreKeys("/tmp", "Test");
+		if (args.length > 0) {
+			generateAndStoreKeys("/tmp", "Test", SignatureAlgorithm.valueOf(args[0]));
+		} else {
+			generateAndStoreKeys("/tmp", "Test");
+		}
 	}
 
 	public static StringBase64CertificateRepository generateKeys(String provider) throws NoSuchAlgorithmException,
 			NoSuchProviderException, IOException {
-		KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DSA");
-		SecureRandom random = SecureRandom.getInstance("SHA1PRNG", "SUN");
-		keyGen.initialize(1024, random);
-		KeyPair pair = keyGen.generateKeyPair();
+		return generateKeys(provider, SignatureAlgorithm.DSA);
+	}
+
+	public static StringBase64CertificateRepository generateKeys(String provider, SignatureAlgorithm algorithm)
+			throws NoSuchAlgorithmException, NoSuchProviderException, IOException {
+		KeyPair pair = algorithm.generateKeyPair();
 
 		show("public.key", pair.getPublic().getEncoded());
 		show("private.key", pair.getPrivate().getEncoded());
 
-		StringBase64CertificateRepository repo = new StringBase64CertificateRepository();
+		StringBase64CertificateRepository repo = new StringBase64CertificateRepository(algorithm);
 		repo.configurePrivateKey(new String(Base64.encodeBase64(pair.getPrivate().getEncoded())));
 		repo.configurePublicKey(provider, new String(Base64.encodeBase64(pair.getPublic().getEncoded())));
 
@@ -44,12 +52,27 @@ public class GenerateKeysUtil {
 
 	public static void generateAndStoreKeys(String path, String provider) throws NoSuchAlgorithmException,
 			NoSuchProviderException, IOException {
-		StringBase64CertificateRepository repo = generateKeys(provider);
+		generateAndStoreKeys(path, provider, SignatureAlgorithm.DSA);
+	}
+
+	public static void generateAndStoreKeys(String path, String provider, SignatureAlgorithm algorithm)
+			throws NoSuchAlgorithmException, NoSuchProviderException, IOException {
+		StringBase64CertificateRepository repo = generateKeys(provider, algorithm);
 
 		store(repo.getPublicKeyFor(provider).getEncoded(), path + "/public.key");
 		store(repo.getPrivateKey().getEncoded(), path + "/private.key");
 	}
 
+	public static SecretKey generateSecretKey() throws NoSuchAlgorithmException {
+		KeyGenerator keyGen = KeyGenerator.getInstance(SecretKeyRepository.HMAC_ALGORITHM);
+		keyGen.init(256);
+		return keyGen.generateKey();
+	}
+
+	public static void generateAndStoreSecretKey(String path) throws NoSuchAlgorithmException, IOException {
+		store(generateSecretKey().getEncoded(), path + "/secret.key");
+	}
+
 	private static void show(String s, byte[] encoded) {
 		byte[] base64 = Base64.encodeBase64(encoded);
 
@@ -0,0 +1,53 @@
+package br.com.dextra.security.utils;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+
+/**
+ * Key ids are written in front of the signature of the tokens, separated by a dot: <code>keyId.signature</code>. The
+ * dot is not part of the Base64 alphabet, so signatures without a key id are told apart from the ones with it.
+ */
+public class KeyIdUtil {
+
+	public static final char SEPARATOR = '.';
+
+	public static String mark(String keyId, String signature) {
+		if (keyId == null) {
+			return signature;
+		}
+		return keyId + SEPARATOR + signature;
+	}
+
+	/**
+	 * @return The key id of the signature or <code>null</code> if it has none.
+	 */
+	public static String keyIdOf(String signature) {
+		if (signature == null) {
+			return null;
+		}
+		int index = signature.indexOf(SEPARATOR);
+		return index < 0 ? null : signature.substring(0, index);
+	}
+
+	/**
+	 * @return The signature without its key id.
+	 */
+	public static String unmark(String signature) {
+		if (signature == null) {
+			return null;
+		}
+		int index = signature.indexOf(SEPARATOR);
+		return index < 0 ? signature : signature.substring(index + 1);
+	}
+
+	public static void validate(String keyId) {
+		if (keyId == null || keyId.length() == 0 || keyId.length() > 255) {
+			throw new ConfigurationException("Key ids must have between 1 and 255 characters : " + keyId);
+		}
+		for (int i = 0; i < keyId.length(); i++) {
+			char c = keyId.charAt(i);
+			if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '-' && c != '_') {
+				throw new ConfigurationException("Key ids may only have letters, digits, '-' and '_' : " + keyId);
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package br.com.dextra.security.utils;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+import br.com.dextra.security.exceptions.ConfigurationException;
+
+/**
+ * The signature algorithms supported on the authentication tokens. Public keys are always X.509 encoded and private
+ * keys PKCS#8 encoded, whatever the algorithm. {@link #ED25519} requires a Java runtime with EdDSA support (Java 15 or
+ * newer).
+ */
+public enum SignatureAlgorithm {
+
+	DSA("DSA", "SHA1withDSA", "SUN") {
+		@Override
+		protected void initialize(KeyPairGenerator keyGen) throws NoSuchAlgorithmException, NoSuchProviderException {
+			keyGen.initialize(1024, SecureRandom.getInstance("SHA1PRNG", "SUN"));
+		}
+	},
+
+	ECDSA_P256("EC", "SHA256withECDSA", null) {
+		@Override
+		protected void initialize(KeyPairGenerator keyGen) throws InvalidAlgorithmParameterException {
+			keyGen.initialize(new ECGenParameterSpec("secp256r1"));
+		}
+	},
+
+	ED25519("Ed25519", "Ed25519", null) {
+		@Override
+		protected void initialize(KeyPairGenerator keyGen) {
+		}
+	};
+
+	private final String keyAlgorithm;
+	private final String signatureAlgorithm;
+	private final String keyProvider;
+
+	private SignatureAlgorithm(String keyAlgorithm, String signatureAlgorithm, String keyProvider) {
+		this.keyAlgorithm = keyAlgorithm;
+		this.signatureAlgorithm = signatureAlgorithm;
+		this.keyProvider = keyProvider;
+	}
+
+	protected abstract void initialize(KeyPairGenerator keyGen) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidAlgorithmParameterException;
+
+	public String getKeyAlgorithm() {
+		return keyAlgorithm;
+	}
+
+	public String getSignatureAlgorithm() {
+		return signatureAlgorithm;
+	}
+
+	public Signature createSignature() throws NoSuchAlgorithmException {
+		return Signature.getInstance(signatureAlgorithm);
+	}
+
+	public KeyPair generateKeyPair() throws NoSuchAlgorithmException, NoSuchProviderException {
+		try {
+			KeyPairGenerator keyGen = KeyPairGenerator.getInstance(keyAlgorithm);
+			initialize(keyGen);
+			return keyGen.generateKeyPair();
+		} catch (InvalidAlgorithmParameterException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public PublicKey decodePublicKey(byte[] encoded) throws InvalidKeySpecException {
+		return getKeyFactory().generatePublic(new X509EncodedKeySpec(encoded));
+	}
+
+	public PrivateKey decodePrivateKey(byte[] encoded) throws InvalidKeySpecException {
+		return getKeyFactory().generatePrivate(new PKCS8EncodedKeySpec(encoded));
+	}
+
+	private KeyFactory getKeyFactory() {
+		try {
+			if (keyProvider != null) {
+				return KeyFactory.getInstance(keyAlgorithm, keyProvider);
+			}
+			return KeyFactory.getInstance(keyAlgorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchProviderException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Finds the algorithm that must be used to sign or verify with the given key.
+	 */
+	public static SignatureAlgorithm forKey(Key key) {
+		String algorithm = key.getAlgorithm();
+		if ("DSA".equals(algorithm)) {
+			return DSA;
+		}
+		if ("EC".equals(algorithm)) {
+			return ECDSA_P256;
+		}
+		if ("Ed25519".equals(algorithm) || "EdDSA".equals(algorithm)) {
+			return ED25519;
+		}
+		throw new ConfigurationException("Unsupported key algorithm : " + algorithm);
+	}
+}
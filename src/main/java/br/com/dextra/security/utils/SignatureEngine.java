@@ -0,0 +1,113 @@
+package br.com.dextra.security.utils;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * Keeps initialized {@link Signature} objects per thread: one for signing and one per provider for verification, plus
+ * one {@link Mac} for the HMAC tokens. {@link Signature} is not thread safe, but once initialized it goes back to its
+ * initialized state after every {@link Signature#sign()} or {@link Signature#verify(byte[])}, so each thread can reuse
+ * it without paying for the provider lookup and the key initialization again. An engine is rebuilt whenever it is used
+ * with a different key instance, which is what happens after
+ * {@link br.com.dextra.security.configuration.CertificateRepository#clearCaches()} reloads the keys. The algorithm of
+ * each engine follows its key, see {@link SignatureAlgorithm#forKey(Key)}.
+ * <p>
+ * The thread locals only hold JDK types, each engine paired with its key in a {@link SimpleImmutableEntry}, so the
+ * pooled threads of a container do not keep the classes of the application, and its class loader, after a redeploy.
+ */
+public class SignatureEngine {
+
+	private final ThreadLocal<Entry<Key, Signature>> signers = new ThreadLocal<Entry<Key, Signature>>();
+
+	private final ThreadLocal<Entry<SecretKey, Mac>> macs = new ThreadLocal<Entry<SecretKey, Mac>>();
+
+	private final ThreadLocal<Map<String, Entry<Key, Signature>>> verifiers =
+			new ThreadLocal<Map<String, Entry<Key, Signature>>>();
+
+	public byte[] sign(PrivateKey key, byte[] data) throws NoSuchAlgorithmException, InvalidKeyException,
+			SignatureException {
+		Entry<Key, Signature> signer = signers.get();
+		if (signer == null || signer.getKey() != key) {
+			Signature sig = createSignature(key);
+			sig.initSign(key);
+			signer = new SimpleImmutableEntry<Key, Signature>(key, sig);
+			signers.set(signer);
+		}
+
+		try {
+			signer.getValue().update(data);
+			return signer.getValue().sign();
+		} catch (SignatureException e) {
+			signers.remove();
+			throw e;
+		}
+	}
+
+	public boolean verify(String provider, PublicKey key, byte[] data, byte[] signature)
+			throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+		Map<String, Entry<Key, Signature>> engines = verifiers.get();
+		if (engines == null) {
+			engines = new HashMap<String, Entry<Key, Signature>>();
+			verifiers.set(engines);
+		}
+
+		Entry<Key, Signature> verifier = engines.get(provider);
+		if (verifier == null || verifier.getKey() != key) {
+			Signature sig = createSignature(key);
+			sig.initVerify(key);
+			verifier = new SimpleImmutableEntry<Key, Signature>(key, sig);
+			engines.put(provider, verifier);
+		}
+
+		try {
+			verifier.getValue().update(data);
+			return verifier.getValue().verify(signature);
+		} catch (SignatureException e) {
+			engines.remove(provider);
+			throw e;
+		}
+	}
+
+	public byte[] mac(SecretKey key, byte[] data) throws NoSuchAlgorithmException, InvalidKeyException {
+		Entry<SecretKey, Mac> keyedMac = macs.get();
+		if (keyedMac == null || keyedMac.getKey() != key) {
+			if (key == null) {
+				throw new InvalidKeyException("No key available.");
+			}
+			Mac mac = Mac.getInstance(key.getAlgorithm());
+			mac.init(key);
+			keyedMac = new SimpleImmutableEntry<SecretKey, Mac>(key, mac);
+			macs.set(keyedMac);
+		}
+
+		return keyedMac.getValue().doFinal(data);
+	}
+
+	/**
+	 * Discards the engines cached by the current thread.
+	 */
+	public void reset() {
+		signers.remove();
+		verifiers.remove();
+		macs.remove();
+	}
+
+	protected Signature createSignature(Key key) throws NoSuchAlgorithmException, InvalidKeyException {
+		if (key == null) {
+			throw new InvalidKeyException("No key available.");
+		}
+		return SignatureAlgorithm.forKey(key).createSignature();
+	}
+}
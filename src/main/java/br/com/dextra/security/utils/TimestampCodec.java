@@ -0,0 +1,178 @@
+package br.com.dextra.security.utils;
+
+import java.util.TimeZone;
+
+/**
+ * Encodes and decodes the timestamps of the authentication tokens straight from epoch milliseconds, without calendar
+ * or formatter objects. Two encodings are understood:
+ * <ul>
+ * <li>the fixed width <code>yyyyMMdd.HHmmssSSS</code>, in the default time zone of the JVM, used by every token issued
+ * so far;</li>
+ * <li>the compact encoding, the letter <code>e</code> followed by the epoch milliseconds in base 36 (9 characters for
+ * current dates), independent of time zones.</li>
+ * </ul>
+ * The fixed width encoding always starts with a digit, so the prefix tells both apart.
+ */
+public class TimestampCodec {
+
+	public static final int FIXED_WIDTH_LENGTH = 18;
+
+	public static final char COMPACT_PREFIX = 'e';
+
+	private static final int COMPACT_RADIX = 36;
+	private static final int MAX_COMPACT_LENGTH = 14;
+
+	private static final long MILLIS_PER_SECOND = 1000;
+	private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+	private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+	private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+	private static final TimeZone zone = TimeZone.getDefault();
+
+	public static long parse(String value) {
+		if (value.length() > 0 && value.charAt(0) == COMPACT_PREFIX) {
+			return parseCompact(value);
+		}
+		return parseFixedWidth(value);
+	}
+
+	public static String format(long millis) {
+		long local = millis + zone.getOffset(millis);
+
+		long days = floorDiv(local, MILLIS_PER_DAY);
+		long millisOfDay = local - days * MILLIS_PER_DAY;
+
+		char[] chars = new char[FIXED_WIDTH_LENGTH];
+		writeDate(chars, days);
+		chars[8] = '.';
+		write(chars, 9, 2, (int) (millisOfDay / MILLIS_PER_HOUR));
+		write(chars, 11, 2, (int) (millisOfDay / MILLIS_PER_MINUTE % 60));
+		write(chars, 13, 2, (int) (millisOfDay / MILLIS_PER_SECOND % 60));
+		write(chars, 15, 3, (int) (millisOfDay % MILLIS_PER_SECOND));
+
+		return new String(chars);
+	}
+
+	public static String formatCompact(long millis) {
+		return COMPACT_PREFIX + Long.toString(millis, COMPACT_RADIX);
+	}
+
+	private static long parseFixedWidth(String value) {
+		if (value.length() != FIXED_WIDTH_LENGTH || value.charAt(8) != '.') {
+			throw new IllegalArgumentException("Invalid timestamp : " + value);
+		}
+
+		int year = digits(value, 0, 4);
+		int month = digits(value, 4, 2);
+		int day = digits(value, 6, 2);
+		int hour = digits(value, 9, 2);
+		int minute = digits(value, 11, 2);
+		int second = digits(value, 13, 2);
+		int millis = digits(value, 15, 3);
+
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour > 23 || minute > 59
+				|| second > 59) {
+			throw new IllegalArgumentException("Invalid timestamp : " + value);
+		}
+
+		long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR + minute
+				* MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis;
+
+		return toUtc(local);
+	}
+
+	private static long parseCompact(String value) {
+		int length = value.length();
+		if (length < 2 || length > MAX_COMPACT_LENGTH) {
+			throw new IllegalArgumentException("Invalid timestamp : " + value);
+		}
+
+		long result = 0;
+		for (int i = 1; i < length; i++) {
+			int digit = Character.digit(value.charAt(i), COMPACT_RADIX);
+			if (digit < 0) {
+				throw new IllegalArgumentException("Invalid timestamp : " + value);
+			}
+			result = result * COMPACT_RADIX + digit;
+		}
+		return result;
+	}
+
+	private static long toUtc(long local) {
+		int offset = zone.getOffset(local - zone.getOffset(local));
+		long utc = local - offset;
+
+		int actualOffset = zone.getOffset(utc);
+		if (actualOffset != offset) {
+			utc = local - actualOffset;
+		}
+		return utc;
+	}
+
+	private static int digits(String value, int start, int length) {
+		int result = 0;
+		for (int i = start; i < start + length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new IllegalArgumentException("Invalid timestamp : " + value);
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+
+	private static void write(char[] chars, int start, int length, int value) {
+		for (int i = start + length - 1; i >= start; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static void writeDate(char[] chars, long days) {
+		long z = days + 719468;
+		long era = floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long shiftedMonth = (5 * dayOfYear + 2) / 153;
+
+		int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+		int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+		int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+		write(chars, 0, 4, year);
+		write(chars, 4, 2, month);
+		write(chars, 6, 2, day);
+	}
+
+	private static long daysFromCivil(int year, int month, int day) {
+		year -= month <= 2 ? 1 : 0;
+		long era = floorDiv(year, 400);
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0)) {
+			q--;
+		}
+		return q;
+	}
+}
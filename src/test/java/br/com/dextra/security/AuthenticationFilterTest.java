@@ -11,11 +11,13 @@ import org.apache.commons.codec.binary.Base64;
 import org.junit.Assert;
 import org.junit.Test;
 
+import br.com.dextra.security.cache.VerifiedTokenCache;
 import br.com.dextra.security.configuration.Configuration;
 import br.com.dextra.security.configuration.ForbiddenResponseHandler;
 import br.com.dextra.security.configuration.StringBase64CertificateRepository;
 import br.com.dextra.security.utils.AuthenticationUtil;
 import br.com.dextra.security.utils.GenerateKeysUtil;
+import br.com.dextra.security.utils.SignatureAlgorithm;
 
 public class AuthenticationFilterTest {
 
@@ -52,6 +54,246 @@ public class AuthenticationFilterTest {
 		Assert.assertEquals(-1, resp.getError());
 	}
 
+	@Test
+	public void testAuthenticatedUserWithVerifiedTokenCache() throws NoSuchAlgorithmException,
+			NoSuchProviderException, IOException, ServletException {
+		Configuration config = new Configuration();
+
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+
+		config.setAllowedProviders("Test");
+		config.setNotAuthenticatedHandler(new ForbiddenResponseHandler());
+		config.setCertificateRepository(certificateRepository);
+		config.setCookieExpiryTimeout(1000);
+		config.setExpiryTimeout(1000);
+		config.setMyProvider("Test");
+		config.setRenewTimeout(1000);
+		config.setVerifiedTokenCache(new VerifiedTokenCache(100));
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		Credential credential = new Credential("test", "Test");
+		String signature = AuthenticationUtil.sign(credential, certificateRepository);
+		credential.setSignature(signature);
+
+		for (int i = 0; i < 2; i++) {
+			HttpServletRequestStub req = new HttpServletRequestStub();
+			req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), credential.toStringFull()));
+			HttpServletResponseStub resp = new HttpServletResponseStub();
+			FilterChainStub chain = new FilterChainStub();
+
+			filter.doFilter(req, resp, chain);
+
+			Assert.assertTrue(chain.wasExecuted());
+			Assert.assertEquals(-1, resp.getError());
+		}
+
+		Assert.assertEquals(1, config.getVerifiedTokenCache().getMissCount());
+		Assert.assertEquals(1, config.getVerifiedTokenCache().getHitCount());
+	}
+
+	@Test
+	public void testVerifiedTokenCacheDoesNotBypassTheProviderCheck() throws NoSuchAlgorithmException,
+			NoSuchProviderException, IOException, ServletException {
+		Configuration config = new Configuration();
+
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+
+		config.setAllowedProviders("Test", "Other");
+		config.setNotAuthenticatedHandler(new ForbiddenResponseHandler());
+		config.setAuthenticationFailedHandler(new ForbiddenResponseHandler());
+		config.setCertificateRepository(certificateRepository);
+		config.setCookieExpiryTimeout(1000);
+		config.setExpiryTimeout(60000);
+		config.setMyProvider("Test");
+		config.setRenewTimeout(60000);
+		config.setVerifiedTokenCache(new VerifiedTokenCache(100));
+
+		final boolean[] allowed = { true };
+		AuthenticationFilter filter = new AuthenticationFilter() {
+			@Override
+			protected boolean allowProvider(String provider) {
+				return allowed[0] && super.allowProvider(provider);
+			}
+		};
+		filter.setConfiguration(config);
+
+		Credential credential = new Credential("test", "Test");
+		credential.setSignature(AuthenticationUtil.sign(credential, certificateRepository));
+
+		HttpServletRequestStub req = new HttpServletRequestStub();
+		req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), credential.toStringFull()));
+		FilterChainStub chain = new FilterChainStub();
+		filter.doFilter(req, new HttpServletResponseStub(), chain);
+		Assert.assertTrue(chain.wasExecuted());
+		Assert.assertEquals(1, config.getVerifiedTokenCache().size());
+
+		allowed[0] = false;
+		chain = new FilterChainStub();
+		filter.doFilter(req, new HttpServletResponseStub(), chain);
+		Assert.assertFalse(chain.wasExecuted());
+
+		config.addAllowedProvider("Another");
+		Assert.assertEquals(0, config.getVerifiedTokenCache().size());
+	}
+
+	@Test
+	public void testMixedSignatureAlgorithms() throws NoSuchAlgorithmException, NoSuchProviderException,
+			IOException, ServletException {
+		Configuration config = new Configuration();
+
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test",
+				SignatureAlgorithm.ED25519);
+		StringBase64CertificateRepository otherRepository = GenerateKeysUtil.generateKeys("Other",
+				SignatureAlgorithm.ECDSA_P256);
+
+		config.setAllowedProviders("Test", "Other");
+		config.setNotAuthenticatedHandler(new ForbiddenResponseHandler());
+		config.setSignatureAlgorithm(SignatureAlgorithm.ED25519);
+		config.setSignatureAlgorithm("Other", SignatureAlgorithm.ECDSA_P256);
+		config.setCertificateRepository(certificateRepository);
+		config.setCookieExpiryTimeout(1000);
+		config.setExpiryTimeout(1000);
+		config.setMyProvider("Test");
+		config.setRenewTimeout(1000);
+
+		certificateRepository.configurePublicKey("Other",
+				new String(Base64.encodeBase64(otherRepository.getPublicKeyFor("Other").getEncoded())));
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		Credential credential = new Credential("test", "Test");
+		credential.setSignature(AuthenticationUtil.sign(credential, config));
+		Credential otherCredential = new Credential("test", "Other");
+		otherCredential.setSignature(AuthenticationUtil.sign(otherCredential, otherRepository));
+
+		for (Credential c : new Credential[] { credential, otherCredential }) {
+			HttpServletRequestStub req = new HttpServletRequestStub();
+			req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), c.toStringFull()));
+			HttpServletResponseStub resp = new HttpServletResponseStub();
+			FilterChainStub chain = new FilterChainStub();
+
+			filter.doFilter(req, resp, chain);
+
+			Assert.assertTrue(chain.wasExecuted());
+			Assert.assertEquals(-1, resp.getError());
+		}
+	}
+
+	@Test
+	public void testHmacSelfIssuedToken() throws NoSuchAlgorithmException, NoSuchProviderException, IOException,
+			ServletException {
+		Configuration config = new Configuration();
+
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+		certificateRepository.configureSecretKey(new String(Base64.encodeBase64(GenerateKeysUtil.generateSecretKey()
+				.getEncoded())));
+
+		config.setAllowedProviders("Test");
+		config.setNotAuthenticatedHandler(new ForbiddenResponseHandler());
+		config.setCertificateRepository(certificateRepository);
+		config.setCookieExpiryTimeout(1000);
+		config.setExpiryTimeout(1000);
+		config.setMyProvider("Test");
+		config.setRenewTimeout(1000);
+		config.setHmacSelfIssuedTokens(true);
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		Credential credential = new Credential("test", "Test");
+		String signature = AuthenticationUtil.sign(credential, config);
+		credential.setSignature(signature);
+
+		Assert.assertEquals(SignatureScheme.HMAC, SignatureScheme.of(signature));
+		Assert.assertTrue(AuthenticationUtil.verify(credential, signature, config));
+		Assert.assertFalse(AuthenticationUtil.verify(credential, signature, certificateRepository));
+
+		HttpServletRequestStub req = new HttpServletRequestStub();
+		req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), credential.toStringFull()));
+		HttpServletResponseStub resp = new HttpServletResponseStub();
+		FilterChainStub chain = new FilterChainStub();
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertTrue(chain.wasExecuted());
+		Assert.assertEquals(-1, resp.getError());
+
+		req = new HttpServletRequestStub();
+		req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), "other"
+				+ credential.toStringFull().substring(4)));
+		resp = new HttpServletResponseStub();
+		chain = new FilterChainStub();
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertFalse(chain.wasExecuted());
+		Assert.assertEquals(ForbiddenResponseHandler.HTTP_ERROR_CODE, resp.getError());
+	}
+
+	@Test
+	public void testV2Token() throws NoSuchAlgorithmException, NoSuchProviderException, IOException,
+			ServletException {
+		Configuration config = new Configuration();
+
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+
+		config.setAllowedProviders("Test");
+		config.setNotAuthenticatedHandler(new ForbiddenResponseHandler());
+		config.setCertificateRepository(certificateRepository);
+		config.setCookieExpiryTimeout(1000);
+		config.setExpiryTimeout(1000);
+		config.setMyProvider("Test");
+		config.setRenewTimeout(1000);
+		config.setTokenFormat(TokenFormat.V2);
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		Credential credential = new Credential("test", "Test");
+		credential.setFormat(TokenFormat.V2);
+		credential.setSignature(AuthenticationUtil.sign(credential, config));
+
+		HttpServletRequestStub req = new HttpServletRequestStub();
+		req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), credential.toStringFull()));
+		HttpServletResponseStub resp = new HttpServletResponseStub();
+		FilterChainStub chain = new FilterChainStub();
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertTrue(chain.wasExecuted());
+		Assert.assertEquals(-1, resp.getError());
+
+		Credential v1 = new Credential("test", "Test");
+		v1.setSignature(AuthenticationUtil.sign(v1, config));
+
+		req = new HttpServletRequestStub();
+		req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), v1.toStringFull()));
+		resp = new HttpServletResponseStub();
+		chain = new FilterChainStub();
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertTrue(chain.wasExecuted());
+		Assert.assertEquals(-1, resp.getError());
+
+		Credential forged = new Credential("other", "Test");
+		forged.setFormat(TokenFormat.V2);
+		forged.setSignature(credential.getSignature());
+
+		req = new HttpServletRequestStub();
+		req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), forged.toStringFull()));
+		resp = new HttpServletResponseStub();
+		chain = new FilterChainStub();
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertFalse(chain.wasExecuted());
+		Assert.assertEquals(ForbiddenResponseHandler.HTTP_ERROR_CODE, resp.getError());
+	}
+
 	@Test
 	public void testUnauthenticatedUser() throws NoSuchAlgorithmException, NoSuchProviderException, IOException,
 			ServletException {
@@ -193,4 +435,252 @@ public class AuthenticationFilterTest {
 		Assert.assertNotNull(token);
 		Assert.assertTrue(token.startsWith("test|Test|"));
 	}
+
+	@Test
+	public void testBearerTokenIsRenewedInAHeader() throws NoSuchAlgorithmException, NoSuchProviderException,
+			IOException, ServletException, InterruptedException {
+		Configuration config = new Configuration();
+
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+
+		config.setAllowedProviders("Test");
+		config.setCertificateRepository(certificateRepository);
+		config.setExpiryTimeout(10000);
+		config.setMyProvider("Test");
+		config.setRenewTimeout(10);
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		Credential credential = new Credential("test", "Test");
+		credential.setSignature(AuthenticationUtil.sign(credential, certificateRepository));
+
+		HttpServletRequestStub req = new HttpServletRequestStub();
+		req.setHeader("Authorization", "Bearer " + credential.toStringFull());
+		req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), "other session"));
+		HttpServletResponseStub resp = new HttpServletResponseStub();
+		FilterChainStub chain = new FilterChainStub();
+
+		Thread.sleep(100);
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertTrue(chain.wasExecuted());
+		Assert.assertEquals(TokenSource.HEADER, req.getAttribute(AuthenticationFilter.TOKEN_SOURCE_ATTRIBUTE));
+		Assert.assertTrue(resp.getCookies().isEmpty());
+
+		String token = resp.getHeader(AuthenticationFilter.RENEWED_TOKEN_HEADER);
+		Assert.assertNotNull(token);
+		Assert.assertTrue(token.startsWith("test|Test|"));
+		Assert.assertFalse(token.equals(credential.toStringFull()));
+	}
+
+	@Test
+	public void testRenewalsOfTheSameTokenAreCoalesced() throws NoSuchAlgorithmException, NoSuchProviderException,
+			IOException, ServletException, InterruptedException {
+		Configuration config = new Configuration();
+
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+
+		config.setAllowedProviders("Test");
+		config.setCertificateRepository(certificateRepository);
+		config.setCookieExpiryTimeout(10000);
+		config.setExpiryTimeout(10000);
+		config.setMyProvider("Test");
+		config.setRenewTimeout(10);
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		Credential credential = new Credential("test", "Test");
+		credential.setSignature(AuthenticationUtil.sign(credential, certificateRepository));
+
+		Thread.sleep(100);
+
+		String[] renewedTokens = new String[3];
+		for (int i = 0; i < renewedTokens.length; i++) {
+			HttpServletRequestStub req = new HttpServletRequestStub();
+			req.addCookie(new Cookie(AuthenticationServlet.generateCookieName(), credential.toStringFull()));
+			HttpServletResponseStub resp = new HttpServletResponseStub();
+			FilterChainStub chain = new FilterChainStub();
+
+			filter.doFilter(req, resp, chain);
+
+			Assert.assertTrue(chain.wasExecuted());
+			for (Cookie cookie : resp.getCookies()) {
+				if (cookie.getValue() != null) {
+					renewedTokens[i] = cookie.getValue();
+				}
+			}
+			Assert.assertNotNull(renewedTokens[i]);
+		}
+
+		Assert.assertEquals(renewedTokens[0], renewedTokens[1]);
+		Assert.assertEquals(renewedTokens[0], renewedTokens[2]);
+		Assert.assertEquals(1, config.getRenewalCache().getRenewalCount());
+		Assert.assertEquals(2, config.getRenewalCache().getCoalescedCount());
+	}
+
+	@Test
+	public void testRenewJitter() {
+		Configuration config = new Configuration();
+		config.setRenewTimeout(60000);
+		config.setRenewJitter(20000);
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		long minimum = Long.MAX_VALUE;
+		long maximum = Long.MIN_VALUE;
+		for (int i = 0; i < 1000; i++) {
+			Credential credential = new Credential("user" + i, "Test");
+			long jitter = filter.renewJitterFor(credential);
+
+			Assert.assertEquals(jitter, filter.renewJitterFor(credential));
+			Assert.assertTrue(jitter >= 0 && jitter <= 20000);
+			minimum = Math.min(minimum, jitter);
+			maximum = Math.max(maximum, jitter);
+		}
+
+		Assert.assertTrue(minimum < 2000);
+		Assert.assertTrue(maximum > 18000);
+	}
+
+	@Test
+	public void testExtractAuthTokenFromCookies() {
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(new Configuration());
+
+		HttpServletRequestStub req = new HttpServletRequestStub();
+		Assert.assertNull(filter.extractAuthTokenFrom(req));
+
+		req.addCookie(new Cookie("other", "value"));
+		req.addCookie(new Cookie("auth1300000000001", "new+token"));
+		req.addCookie(new Cookie("auth1300000000000", "old+token"));
+
+		Assert.assertEquals("new+token", filter.extractAuthTokenFrom(req));
+
+		req = new HttpServletRequestStub();
+		req.addCookie(new Cookie("auth1300000000000", "old+token"));
+		req.addCookie(new Cookie("auth1300000000001", "new+token"));
+		req.addCookie(new Cookie("auth1300000000001", "duplicated"));
+
+		Assert.assertEquals("new+token", filter.extractAuthTokenFrom(req));
+	}
+
+	@Test
+	public void testDecode() {
+		AuthenticationFilter filter = new AuthenticationFilter();
+
+		String token = "test|Test|20111010.101010100|MCwCFA+a/b=";
+		Assert.assertSame(token, filter.decode(token));
+		Assert.assertEquals(token, filter.decode("test|Test|20111010.101010100|MCwCFA a/b="));
+		Assert.assertEquals(token, filter.decode("test%7CTest%7C20111010.101010100%7CMCwCFA%2Ba%2Fb%3D"));
+		Assert.assertEquals(token, filter.decode("test%7CTest%7C20111010.101010100%7CMCwCFA+a/b="));
+	}
+
+	@Test
+	public void testStableCookieName() throws NoSuchAlgorithmException, NoSuchProviderException, IOException,
+			ServletException {
+		Configuration config = new Configuration();
+
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+
+		config.setAllowedProviders("Test");
+		config.setNotAuthenticatedHandler(new ForbiddenResponseHandler());
+		config.setCertificateRepository(certificateRepository);
+		config.setCookieExpiryTimeout(1000);
+		config.setExpiryTimeout(1000);
+		config.setMyProvider("Test");
+		config.setRenewTimeout(1000);
+		config.setStableCookieName(true);
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		Credential credential = new Credential("test", "Test");
+		credential.setSignature(AuthenticationUtil.sign(credential, certificateRepository));
+		String token = credential.toStringFull();
+
+		HttpServletRequestStub req = new HttpServletRequestStub();
+		req.addCookie(new Cookie("auth1300000000000", "old"));
+		req.addCookie(new Cookie("auth1300000000001", token));
+		HttpServletResponseStub resp = new HttpServletResponseStub();
+		FilterChainStub chain = new FilterChainStub();
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertTrue(chain.wasExecuted());
+
+		int expired = 0;
+		Cookie stable = null;
+		for (Cookie cookie : resp.getCookies()) {
+			if (cookie.getName().equals(AuthenticationServlet.AUTH_COOKIE_NAME)) {
+				stable = cookie;
+			} else {
+				Assert.assertEquals(0, cookie.getMaxAge());
+				expired++;
+			}
+		}
+		Assert.assertEquals(2, expired);
+		Assert.assertNotNull(stable);
+		Assert.assertEquals(token, stable.getValue());
+
+		req = new HttpServletRequestStub();
+		req.addCookie(new Cookie("auth1300000000001", "old"));
+		req.addCookie(new Cookie(AuthenticationServlet.AUTH_COOKIE_NAME, token));
+		Assert.assertEquals(token, filter.extractAuthTokenFrom(req));
+
+		req = new HttpServletRequestStub();
+		req.addCookie(new Cookie(AuthenticationServlet.AUTH_COOKIE_NAME, token));
+		resp = new HttpServletResponseStub();
+		chain = new FilterChainStub();
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertTrue(chain.wasExecuted());
+		Assert.assertTrue(resp.getCookies().isEmpty());
+
+		req = new HttpServletRequestStub();
+		req.setHeader("Authorization", "Bearer " + token);
+		req.addCookie(new Cookie("auth1300000000001", "old"));
+		resp = new HttpServletResponseStub();
+		chain = new FilterChainStub();
+
+		filter.doFilter(req, resp, chain);
+
+		Assert.assertTrue(chain.wasExecuted());
+		Assert.assertTrue(resp.getCookies().isEmpty());
+	}
+
+	@Test
+	public void testTokenSources() {
+		Configuration config = new Configuration();
+
+		AuthenticationFilter filter = new AuthenticationFilter();
+		filter.setConfiguration(config);
+
+		HttpServletRequestStub req = new HttpServletRequestStub();
+		req.setParameter("auth", "body");
+		Assert.assertNull(filter.extractAuthTokenFrom(req));
+
+		req.setQueryString("other=1&auth=query%2Btoken&authx=2");
+		Assert.assertEquals("query+token", filter.extractAuthTokenFrom(req));
+
+		req.addCookie(new Cookie("auth1300000000000", "cookie"));
+		Assert.assertEquals("cookie", filter.extractAuthTokenFrom(req));
+
+		req.setHeader("Authorization", "Basic dGVzdA==");
+		Assert.assertEquals("cookie", filter.extractAuthTokenFrom(req));
+
+		req.setHeader("Authorization", "bearer header|token");
+		Assert.assertEquals("header|token", filter.extractAuthTokenFrom(req));
+
+		config.setTokenSources(TokenSource.PARAMETER, TokenSource.COOKIE);
+		Assert.assertEquals("body", filter.extractAuthTokenFrom(req));
+
+		config.setTokenSources(TokenSource.QUERY);
+		req.setQueryString("authentication=1&xauth=2");
+		Assert.assertNull(filter.extractAuthTokenFrom(req));
+	}
 }
@@ -0,0 +1,131 @@
+package br.com.dextra.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.com.dextra.security.BatchVerifier.Result;
+import br.com.dextra.security.BatchVerifier.Status;
+import br.com.dextra.security.cache.VerifiedTokenCache;
+import br.com.dextra.security.configuration.Configuration;
+import br.com.dextra.security.configuration.StringBase64CertificateRepository;
+import br.com.dextra.security.utils.AuthenticationUtil;
+import br.com.dextra.security.utils.GenerateKeysUtil;
+
+public class BatchVerifierTest {
+
+	@Test
+	public void testMixedBatch() throws Exception {
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+		Configuration config = createConfiguration(certificateRepository);
+
+		String valid = sign(new Credential("test", "Test"), certificateRepository);
+		String forged = valid.replace("test", "root");
+		Credential other = new Credential("test", "Unknown");
+		other.setSignature(Credential.parse(valid).getSignature());
+		String unknown = other.toStringFull();
+
+		BatchVerifier verifier = new BatchVerifier(config);
+		try {
+			List<Result> results = verifier.verify(Arrays.asList(valid, forged, unknown, "garbage", null, valid));
+
+			Assert.assertEquals(6, results.size());
+			Assert.assertEquals(Status.VALID, results.get(0).getStatus());
+			Assert.assertEquals("test", results.get(0).getCredential().getUsername());
+			Assert.assertEquals(Status.INVALID_SIGNATURE, results.get(1).getStatus());
+			Assert.assertEquals(Status.PROVIDER_NOT_ALLOWED, results.get(2).getStatus());
+			Assert.assertEquals(Status.MALFORMED, results.get(3).getStatus());
+			Assert.assertNotNull(results.get(3).getError());
+			Assert.assertEquals(Status.MALFORMED, results.get(4).getStatus());
+			Assert.assertTrue(results.get(5).isValid());
+			Assert.assertEquals(valid, results.get(5).getToken());
+		} finally {
+			verifier.close();
+		}
+	}
+
+	@Test
+	public void testExpiredTokens() throws Exception {
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+		Configuration config = createConfiguration(certificateRepository);
+
+		String token = sign(new Credential("test", "Test"), certificateRepository);
+
+		BatchVerifier verifier = new BatchVerifier(config) {
+			@Override
+			protected long currentTime() {
+				return System.currentTimeMillis() + 120000;
+			}
+		};
+		try {
+			Assert.assertEquals(Status.EXPIRED, verifier.verify(token).getStatus());
+		} finally {
+			verifier.close();
+		}
+	}
+
+	@Test
+	public void testLargeBatch() throws Exception {
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+		Configuration config = createConfiguration(certificateRepository);
+		config.setVerifiedTokenCache(new VerifiedTokenCache(1000));
+
+		List<String> tokens = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			tokens.add(sign(new Credential("user" + i, "Test"), certificateRepository));
+		}
+
+		BatchVerifier verifier = new BatchVerifier(config);
+		verifier.setThreshold(4);
+		try {
+			List<Result> results = verifier.verify(tokens);
+			for (int i = 0; i < tokens.size(); i++) {
+				Assert.assertTrue(results.get(i).isValid());
+				Assert.assertEquals("user" + i, results.get(i).getCredential().getUsername());
+			}
+			Assert.assertEquals(200, config.getVerifiedTokenCache().size());
+
+			Assert.assertTrue(verifier.verify(tokens).get(0).isValid());
+			Assert.assertTrue(config.getVerifiedTokenCache().getHitCount() >= 200);
+		} finally {
+			verifier.close();
+		}
+	}
+
+	@Test
+	public void testCachedTokensOfRemovedProvidersAreRejected() throws Exception {
+		StringBase64CertificateRepository certificateRepository = GenerateKeysUtil.generateKeys("Test");
+		Configuration config = createConfiguration(certificateRepository);
+		config.setVerifiedTokenCache(new VerifiedTokenCache(10));
+
+		String token = sign(new Credential("test", "Test"), certificateRepository);
+
+		BatchVerifier verifier = new BatchVerifier(config);
+		try {
+			Assert.assertTrue(verifier.verify(token).isValid());
+			Assert.assertEquals(1, config.getVerifiedTokenCache().size());
+
+			config.getAllowedProviders().remove("Test");
+			Assert.assertEquals(Status.PROVIDER_NOT_ALLOWED, verifier.verify(token).getStatus());
+		} finally {
+			verifier.close();
+		}
+	}
+
+	private Configuration createConfiguration(StringBase64CertificateRepository certificateRepository) {
+		Configuration config = new Configuration();
+		config.setAllowedProviders("Test");
+		config.setCertificateRepository(certificateRepository);
+		config.setExpiryTimeout(60000);
+		config.setMyProvider("Test");
+		return config;
+	}
+
+	private String sign(Credential credential, StringBase64CertificateRepository certificateRepository) {
+		credential.setSignature(AuthenticationUtil.sign(credential, certificateRepository));
+		return credential.toStringFull();
+	}
+}
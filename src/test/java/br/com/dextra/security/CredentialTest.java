@@ -8,6 +8,7 @@ import java.util.Date;
 import org.junit.Assert;
 import org.junit.Test;
 
+import br.com.dextra.security.exceptions.MalformedAuthTokenException;
 import br.com.dextra.security.exceptions.TimestampParsingException;
 
 public class CredentialTest {
@@ -21,8 +22,8 @@ public class CredentialTest {
 		Credential credential = new Credential("test", "Test") {
 
 			@Override
-			protected Date getToday() {
-				return date("07/02/2012");
+			protected long currentTime() {
+				return date("07/02/2012").getTime();
 			}
 		};
 
@@ -74,6 +75,100 @@ public class CredentialTest {
 				credential.toStringFull());
 	}
 
+	@Test(expected = MalformedAuthTokenException.class)
+	public void testParseMalformedToken() {
+		Credential.parse("a|Services|20110706.105225185");
+	}
+
+	@Test
+	public void testParsedPayloadIsTheTokenPrefix() {
+		String token = "a|Services|20110706.105225185|MCwCFFN7c9HrHVMe6s7Aru2C54SDxrOxAhRVXgEehy+yjh9L4fbvvH2wT3hq0g==";
+		Credential credential = Credential.parse(token);
+
+		Assert.assertSame(credential.toString(), credential.toString());
+		Assert.assertEquals(token, credential.toStringFull());
+		Assert.assertEquals("MCwCFFN7c9HrHVMe6s7Aru2C54SDxrOxAhRVXgEehy+yjh9L4fbvvH2wT3hq0g==", credential.getSignature());
+	}
+
+	@Test
+	public void testV2RoundTrip() {
+		Credential credential = new Credential("jos\u00e9", "Services");
+		credential.setFormat(TokenFormat.V2);
+		credential.setSignature("MCwCFFN7c9HrHVMe6s7Aru2C54SDxrOxAhRVXgEehy+yjh9L4fbvvH2wT3hq0g==");
+
+		String token = credential.toStringFull();
+		Assert.assertTrue(token.matches("[A-Za-z0-9_-]+"));
+
+		Credential v1 = new Credential("jos\u00e9", "Services");
+		v1.setSignature(credential.getSignature());
+		Assert.assertTrue(token.length() < v1.toStringFull().length());
+
+		Credential parsed = Credential.parse(token);
+		Assert.assertEquals(TokenFormat.V2, parsed.getFormat());
+		Assert.assertEquals("jos\u00e9", parsed.getUsername());
+		Assert.assertEquals("Services", parsed.getProvider());
+		Assert.assertEquals(credential.getTimestampMillis(), parsed.getTimestampMillis());
+		Assert.assertEquals(credential.getSignature(), parsed.getSignature());
+		Assert.assertArrayEquals(credential.getSignedData(), parsed.getSignedData());
+		Assert.assertEquals(token, parsed.toStringFull());
+	}
+
+	@Test
+	public void testV2HmacRoundTrip() {
+		Credential credential = new Credential("a", "Services");
+		credential.setFormat(TokenFormat.V2);
+		credential.setSignature("~BiXkT3pPvaIfLIjxT1a3gYSKFFSjfGnDGQIlaeFVsL0=");
+
+		Credential parsed = Credential.parse(credential.toStringFull());
+		Assert.assertEquals(SignatureScheme.HMAC, SignatureScheme.of(parsed.getSignature()));
+		Assert.assertEquals(credential.getSignature(), parsed.getSignature());
+	}
+
+	@Test
+	public void testKeyIdInSignature() {
+		Credential credential = Credential.parse("a|Services|20110706.105225185|2011a.~BiXkT3pPvaIfLIjxT1a3gYSKFFSjfGnDGQIlaeFVsL0");
+		Assert.assertEquals("2011a.~BiXkT3pPvaIfLIjxT1a3gYSKFFSjfGnDGQIlaeFVsL0=", credential.getSignature());
+
+		credential.setFormat(TokenFormat.V2);
+		credential.setSignature("2011a.MCwCFFN7c9HrHVMe6s7Aru2C54SDxrOxAhRVXgEehy+yjh9L4fbvvH2wT3hq0g==");
+
+		Credential parsed = Credential.parse(credential.toStringFull());
+		Assert.assertEquals(credential.getSignature(), parsed.getSignature());
+	}
+
+	@Test
+	public void testV2RawSignature() {
+		Credential credential = new Credential("a", "Services");
+		credential.setFormat(TokenFormat.V2);
+		credential.setSignature("2011a.~BiXkT3pPvaIfLIjxT1a3gYSKFFSjfGnDGQIlaeFVsL0=");
+
+		Credential parsed = Credential.parse(credential.toStringFull());
+		Assert.assertEquals("2011a", parsed.getKeyId());
+		Assert.assertEquals(SignatureScheme.HMAC, parsed.getSignatureScheme());
+		Assert.assertArrayEquals(credential.getRawSignature(), parsed.getRawSignature());
+		Assert.assertSame(parsed.getRawSignature(), parsed.getRawSignature());
+		Assert.assertEquals(credential.getSignature(), parsed.getSignature());
+
+		parsed.setSignature(null);
+		Assert.assertNull(parsed.getRawSignature());
+		Assert.assertNull(parsed.getSignatureScheme());
+		Assert.assertNull(parsed.getKeyId());
+	}
+
+	@Test(expected = MalformedAuthTokenException.class)
+	public void testParseTruncatedV2Token() {
+		Credential credential = new Credential("a", "Services");
+		credential.setFormat(TokenFormat.V2);
+		credential.setSignature("MCwCFFN7c9HrHVMe6s7Aru2C54SDxrOxAhRVXgEehy+yjh9L4fbvvH2wT3hq0g==");
+
+		Credential.parse(credential.toStringFull().substring(0, 12));
+	}
+
+	@Test(expected = MalformedAuthTokenException.class)
+	public void testParseV2TokenWithNegativeLength() {
+		Credential.parse("Av___________wFB");
+	}
+
 	@Test
 	public void testRenewCredential() throws InterruptedException {
 		Credential credential = new Credential("a", "Services");
@@ -145,6 +240,16 @@ public class CredentialTest {
 				tokens[3]);
 	}
 
+	@Test
+	public void testSplitHmacSignature() {
+		String[] tokens = Credential
+				.splitTokens("a|Services|20110706.105225185|~Z3XE7iHpQfzPx9kQ3Yc1Cs2PLbnDuA+3t8kaQwE6sL0");
+
+		Assert.assertEquals(4, tokens.length);
+		Assert.assertEquals("~Z3XE7iHpQfzPx9kQ3Yc1Cs2PLbnDuA+3t8kaQwE6sL0=", tokens[3]);
+		Assert.assertEquals(SignatureScheme.HMAC, SignatureScheme.of(tokens[3]));
+	}
+
 	@Test
 	public void testDateParseAndFormat() throws ParseException {
 		String originalDate = "20110706.111513655";
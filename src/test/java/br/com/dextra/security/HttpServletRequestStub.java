@@ -6,6 +6,7 @@ import java.io.UnsupportedEncodingException;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -20,6 +21,10 @@ public class HttpServletRequestStub implements HttpServletRequest {
 
 	private String contextPath = "";
 	private List<Cookie> cookies = new ArrayList<Cookie>();
+	private Map<String, String> headers = new HashMap<String, String>();
+	private Map<String, String> parameters = new HashMap<String, String>();
+	private String queryString;
+	private Map<String, Object> attributes = new HashMap<String, Object>();
 
 	@Override
 	public String getContextPath() {
@@ -37,7 +42,7 @@ public class HttpServletRequestStub implements HttpServletRequest {
 
 	@Override
 	public Object getAttribute(String arg0) {
-		return null;
+		return attributes.get(arg0);
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -94,7 +99,11 @@ public class HttpServletRequestStub implements HttpServletRequest {
 
 	@Override
 	public String getParameter(String arg0) {
-		return null;
+		return parameters.get(arg0);
+	}
+
+	public void setParameter(String name, String value) {
+		this.parameters.put(name, value);
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -171,10 +180,12 @@ public class HttpServletRequestStub implements HttpServletRequest {
 
 	@Override
 	public void removeAttribute(String arg0) {
+		attributes.remove(arg0);
 	}
 
 	@Override
 	public void setAttribute(String arg0, Object arg1) {
+		attributes.put(arg0, arg1);
 	}
 
 	@Override
@@ -193,7 +204,11 @@ public class HttpServletRequestStub implements HttpServletRequest {
 
 	@Override
 	public String getHeader(String arg0) {
-		return null;
+		return headers.get(arg0);
+	}
+
+	public void setHeader(String name, String value) {
+		this.headers.put(name, value);
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -230,7 +245,11 @@ public class HttpServletRequestStub implements HttpServletRequest {
 
 	@Override
 	public String getQueryString() {
-		return null;
+		return queryString;
+	}
+
+	public void setQueryString(String queryString) {
+		this.queryString = queryString;
 	}
 
 	@Override
@@ -3,8 +3,10 @@ package br.com.dextra.security;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.ServletOutputStream;
@@ -18,6 +20,7 @@ public class HttpServletResponseStub implements HttpServletResponse {
 	private Set<Cookie> cookies = new HashSet<Cookie>();
 	private int error = -1;
 	private String redirect;
+	private Map<String, String> headers = new HashMap<String, String>();
 
 	@Override
 	public PrintWriter getWriter() throws IOException {
@@ -55,6 +58,10 @@ public class HttpServletResponseStub implements HttpServletResponse {
 		return redirect;
 	}
 
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
 	@Override
 	public void flushBuffer() throws IOException {
 	}
@@ -123,6 +130,7 @@ public class HttpServletResponseStub implements HttpServletResponse {
 
 	@Override
 	public void addHeader(String arg0, String arg1) {
+		headers.put(arg0, arg1);
 	}
 
 	@Override
@@ -131,7 +139,7 @@ public class HttpServletResponseStub implements HttpServletResponse {
 
 	@Override
 	public boolean containsHeader(String arg0) {
-		return false;
+		return headers.containsKey(arg0);
 	}
 
 	@Override
@@ -164,6 +172,7 @@ public class HttpServletResponseStub implements HttpServletResponse {
 
 	@Override
 	public void setHeader(String arg0, String arg1) {
+		headers.put(arg0, arg1);
 	}
 
 	@Override
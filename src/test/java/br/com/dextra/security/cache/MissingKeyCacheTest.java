@@ -0,0 +1,88 @@
+package br.com.dextra.security.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.com.dextra.security.configuration.FileSystemCertificateRepository;
+import br.com.dextra.security.configuration.StringBase64CertificateRepository;
+import br.com.dextra.security.exceptions.InvalidKeyPathException;
+import br.com.dextra.security.utils.GenerateKeysUtil;
+
+public class MissingKeyCacheTest {
+
+	private long now = 1000;
+
+	private MissingKeyCache createCache(int maximumSize) {
+		return new MissingKeyCache(maximumSize, 500) {
+			@Override
+			protected long currentTime() {
+				return now;
+			}
+		};
+	}
+
+	@Test
+	public void testMissingAliasExpires() {
+		MissingKeyCache cache = createCache(10);
+
+		Assert.assertFalse(cache.isMissing("Unknown"));
+		cache.markMissing("Unknown");
+		Assert.assertTrue(cache.isMissing("Unknown"));
+		Assert.assertEquals(0.5, cache.getHitRate(), 0.0001);
+
+		now = 1500;
+
+		Assert.assertFalse(cache.isMissing("Unknown"));
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testBoundedSize() {
+		MissingKeyCache cache = createCache(10);
+		for (int i = 0; i < 100; i++) {
+			cache.markMissing("Unknown" + i);
+		}
+
+		Assert.assertTrue(cache.size() <= 10);
+		Assert.assertTrue(cache.getEvictionCount() > 0);
+	}
+
+	@Test
+	public void testFileSystemRepositoryLooksUpMissingProviderOnce() throws IOException, GeneralSecurityException {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "missing-key-cache-" + System.nanoTime());
+		try {
+			StringBase64CertificateRepository keys = GenerateKeysUtil.generateKeys("Test");
+			FileUtils.writeByteArrayToFile(new File(dir, "private.key"), keys.getPrivateKey().getEncoded());
+			FileUtils.writeByteArrayToFile(new File(dir, "Test"), keys.getPublicKeyFor("Test").getEncoded());
+
+			FileSystemCertificateRepository repository = new FileSystemCertificateRepository(new File(dir,
+					"private.key").getPath(), dir.getPath());
+			MissingKeyCache cache = new MissingKeyCache();
+			repository.setMissingKeyCache(cache);
+
+			Assert.assertNotNull(repository.getPublicKeyFor("Test"));
+
+			for (int i = 0; i < 3; i++) {
+				try {
+					repository.getPublicKeyFor("Unknown");
+					Assert.fail();
+				} catch (InvalidKeyPathException e) {
+					// expected
+				}
+			}
+
+			Assert.assertEquals(1, cache.size());
+			Assert.assertEquals(2, cache.getHitCount());
+
+			repository.clearCaches();
+			Assert.assertEquals(0, cache.size());
+		} finally {
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package br.com.dextra.security.cache;
+
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.com.dextra.security.Credential;
+
+public class RenewalCacheTest {
+
+	private long now = 1000;
+
+	private RenewalCache createCache(int maximumSize) {
+		return new RenewalCache(500, maximumSize) {
+			@Override
+			protected long currentTime() {
+				return now;
+			}
+		};
+	}
+
+	private Callable<Credential> renewal() {
+		return new Callable<Credential>() {
+			@Override
+			public Credential call() {
+				return new Credential("test", "Test");
+			}
+		};
+	}
+
+	@Test
+	public void testCoalesced() throws Exception {
+		RenewalCache cache = createCache(10);
+
+		Credential renewed = cache.renew("token", renewal());
+		Assert.assertSame(renewed, cache.renew("token", renewal()));
+		Assert.assertEquals(1, cache.getRenewalCount());
+		Assert.assertEquals(1, cache.getCoalescedCount());
+
+		now = 1500;
+		Assert.assertNotSame(renewed, cache.renew("token", renewal()));
+	}
+
+	@Test
+	public void testBoundedSize() throws Exception {
+		RenewalCache cache = createCache(10);
+		for (int i = 0; i < 100; i++) {
+			Assert.assertNotNull(cache.renew("token" + i, renewal()));
+		}
+
+		Assert.assertEquals(10, cache.size());
+		Assert.assertEquals(100, cache.getRenewalCount());
+
+		now = 1500;
+		cache.renew("other", renewal());
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testPurgedOncePerWindow() throws Exception {
+		RenewalCache cache = createCache(10);
+		cache.renew("first", renewal());
+		now = 1200;
+		cache.renew("second", renewal());
+
+		now = 1550;
+		cache.renew("third", renewal());
+		Assert.assertEquals(2, cache.size());
+
+		now = 1800;
+		cache.renew("fourth", renewal());
+		Assert.assertEquals(3, cache.size());
+
+		now = 2050;
+		cache.renew("fifth", renewal());
+		Assert.assertEquals(2, cache.size());
+	}
+}
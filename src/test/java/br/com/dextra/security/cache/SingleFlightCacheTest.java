@@ -0,0 +1,82 @@
+package br.com.dextra.security.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SingleFlightCacheTest {
+
+	@Test
+	public void testConcurrentMissesLoadOnce() throws InterruptedException {
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final SingleFlightCache<String, String> cache = new SingleFlightCache<String, String>(
+				new SingleFlightCache.Loader<String, String>() {
+					@Override
+					public String load(String key) {
+						loads.incrementAndGet();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+						return key.toUpperCase();
+					}
+				});
+
+		final String[] results = new String[8];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					results[index] = cache.get("test");
+				}
+			};
+			threads[i].start();
+		}
+
+		Thread.sleep(100);
+		release.countDown();
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertEquals(1, loads.get());
+		for (String result : results) {
+			Assert.assertEquals("TEST", result);
+		}
+	}
+
+	@Test
+	public void testFailedLoadIsRetried() {
+		final AtomicInteger loads = new AtomicInteger();
+
+		SingleFlightCache<String, String> cache = new SingleFlightCache<String, String>(
+				new SingleFlightCache.Loader<String, String>() {
+					@Override
+					public String load(String key) {
+						if (loads.incrementAndGet() == 1) {
+							throw new IllegalStateException("First load fails.");
+						}
+						return key;
+					}
+				});
+
+		try {
+			cache.get("test");
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		Assert.assertEquals("test", cache.get("test"));
+		Assert.assertEquals("test", cache.get("test"));
+		Assert.assertEquals(2, loads.get());
+	}
+}
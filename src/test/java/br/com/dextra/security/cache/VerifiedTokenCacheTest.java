@@ -0,0 +1,78 @@
+package br.com.dextra.security.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.com.dextra.security.Credential;
+
+public class VerifiedTokenCacheTest {
+
+	private long now = 1000;
+
+	private VerifiedTokenCache createCache(int maximumSize) {
+		return new VerifiedTokenCache(maximumSize) {
+			@Override
+			protected long currentTime() {
+				return now;
+			}
+		};
+	}
+
+	@Test
+	public void testHitAndMiss() {
+		VerifiedTokenCache cache = createCache(10);
+		Credential credential = new Credential("test", "Test");
+
+		Assert.assertNull(cache.get("token"));
+		cache.put("token", credential, 2000);
+
+		Assert.assertSame(credential, cache.get("token"));
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(0.5, cache.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void testExpiredEntry() {
+		VerifiedTokenCache cache = createCache(10);
+		cache.put("token", new Credential("test", "Test"), 2000);
+
+		now = 2000;
+
+		Assert.assertNull(cache.get("token"));
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testAlreadyExpiredEntryIsNotStored() {
+		VerifiedTokenCache cache = createCache(10);
+		cache.put("token", new Credential("test", "Test"), 500);
+
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testBoundedSize() {
+		VerifiedTokenCache cache = createCache(10);
+		for (int i = 0; i < 100; i++) {
+			cache.put("token" + i, new Credential("test", "Test"), 2000);
+		}
+
+		Assert.assertTrue(cache.size() <= 10);
+		Assert.assertTrue(cache.getEvictionCount() > 0);
+	}
+
+	@Test
+	public void testExpiredEntriesAreEvictedFirst() {
+		VerifiedTokenCache cache = createCache(2);
+		cache.put("old", new Credential("test", "Test"), 1500);
+		cache.put("young", new Credential("test", "Test"), 5000);
+
+		now = 2000;
+		cache.put("new", new Credential("test", "Test"), 5000);
+
+		Assert.assertNotNull(cache.get("young"));
+		Assert.assertNotNull(cache.get("new"));
+		Assert.assertEquals(2, cache.size());
+	}
+}
@@ -0,0 +1,106 @@
+package br.com.dextra.security.configuration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConfigurationRegistryTest {
+
+	private ClassLoader loader = getClass().getClassLoader();
+
+	private ServletContext createContext(final Map<String, String> parameters) {
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+
+		return (ServletContext) Proxy.newProxyInstance(loader, new Class<?>[] { ServletContext.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if (name.equals("getAttribute")) {
+							return attributes.get(args[0]);
+						} else if (name.equals("setAttribute")) {
+							attributes.put((String) args[0], args[1]);
+						} else if (name.equals("removeAttribute")) {
+							attributes.remove(args[0]);
+						} else if (name.equals("getInitParameter")) {
+							return parameters.get(args[0]);
+						}
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void testConfigurationIsShared() {
+		ServletContext context = createContext(new HashMap<String, String>());
+
+		ConfigurationRegistry registry = ConfigurationRegistry.get(context);
+		Assert.assertSame(registry, ConfigurationRegistry.get(context));
+
+		Configuration filter = registry.acquire(loader, "security.properties");
+		Configuration servlet = registry.acquire(loader, "security.properties");
+		Configuration other = registry.acquire(loader, "security.bsh");
+
+		Assert.assertSame(filter, servlet);
+		Assert.assertNotSame(filter, other);
+		Assert.assertEquals(2, registry.size());
+
+		registry.release(filter);
+		Assert.assertEquals(2, registry.size());
+		Assert.assertSame(servlet, registry.acquire(loader, "security.properties"));
+
+		registry.release(servlet);
+		registry.release(servlet);
+		registry.release(other);
+		Assert.assertEquals(0, registry.size());
+
+		Assert.assertNotSame(filter, registry.acquire(loader, "security.properties"));
+	}
+
+	@Test
+	public void testConfigurationsArePerClassLoader() {
+		ConfigurationRegistry registry = ConfigurationRegistry.get(createContext(new HashMap<String, String>()));
+		ClassLoader other = new URLClassLoader(new URL[0], loader);
+
+		Configuration configuration = registry.acquire(loader, "security.properties");
+		Configuration otherConfiguration = registry.acquire(other, "security.properties");
+
+		Assert.assertNotSame(configuration, otherConfiguration);
+		Assert.assertEquals(2, registry.size());
+		Assert.assertSame(otherConfiguration, registry.acquire(other, "security.properties"));
+
+		registry.destroy();
+		Assert.assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void testContextListener() {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(Configuration.CONFIGURATION_FILE_KEY, "security.properties");
+		ServletContext context = createContext(parameters);
+
+		ConfigurationContextListener listener = new ConfigurationContextListener();
+		listener.contextInitialized(new ServletContextEvent(context));
+
+		ConfigurationRegistry registry = ConfigurationRegistry.get(context);
+		Assert.assertEquals(1, registry.size());
+
+		Configuration configuration = registry.acquire(loader, "security.properties");
+		registry.release(configuration);
+		Assert.assertEquals(1, registry.size());
+
+		listener.contextDestroyed(new ServletContextEvent(context));
+		Assert.assertEquals(0, registry.size());
+		Assert.assertNull(context.getAttribute(ConfigurationRegistry.ATTRIBUTE));
+	}
+}
@@ -0,0 +1,153 @@
+package br.com.dextra.security.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.dextra.security.BatchVerifier;
+import br.com.dextra.security.BatchVerifier.Status;
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.cache.VerifiedTokenCache;
+import br.com.dextra.security.utils.AuthenticationUtil;
+import br.com.dextra.security.utils.GenerateKeysUtil;
+import br.com.dextra.security.utils.SignatureAlgorithm;
+
+public class FileSystemCertificateRepositoryTest {
+
+	private File dir;
+	private FileSystemCertificateRepository repository;
+
+	@Before
+	public void setUp() throws IOException, GeneralSecurityException {
+		dir = new File(System.getProperty("java.io.tmpdir"), "fs-certificate-repository-" + System.nanoTime());
+		storeKeys();
+
+		repository = new FileSystemCertificateRepository(new File(dir, "private.key").getPath(), dir.getPath());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		repository.close();
+		FileUtils.deleteQuietly(dir);
+	}
+
+	private StringBase64CertificateRepository storeKeys() throws IOException, GeneralSecurityException {
+		StringBase64CertificateRepository keys = GenerateKeysUtil.generateKeys("Test");
+		FileUtils.writeByteArrayToFile(new File(dir, "private.key"), keys.getPrivateKey().getEncoded());
+		FileUtils.writeByteArrayToFile(new File(dir, "Test"), keys.getPublicKeyFor("Test").getEncoded());
+		return keys;
+	}
+
+	@Test
+	public void testClearCachesReplacesKeys() throws IOException, GeneralSecurityException {
+		PrivateKey privateKey = repository.getPrivateKey();
+		PublicKey publicKey = repository.getPublicKeyFor("Test");
+		Assert.assertSame(privateKey, repository.getPrivateKey());
+		Assert.assertSame(publicKey, repository.getPublicKeyFor("Test"));
+
+		StringBase64CertificateRepository keys = storeKeys();
+		repository.clearCaches();
+
+		Assert.assertEquals(keys.getPrivateKey(), repository.getPrivateKey());
+		Assert.assertEquals(keys.getPublicKeyFor("Test"), repository.getPublicKeyFor("Test"));
+	}
+
+	@Test
+	public void testRepositoryAlgorithmIsKeptByConfiguration() throws IOException, GeneralSecurityException {
+		StringBase64CertificateRepository keys = GenerateKeysUtil.generateKeys("Test", SignatureAlgorithm.ED25519);
+		StringBase64CertificateRepository otherKeys = GenerateKeysUtil.generateKeys("Other",
+				SignatureAlgorithm.ECDSA_P256);
+		FileUtils.writeByteArrayToFile(new File(dir, "private.key"), keys.getPrivateKey().getEncoded());
+		FileUtils.writeByteArrayToFile(new File(dir, "Test"), keys.getPublicKeyFor("Test").getEncoded());
+		FileUtils.writeByteArrayToFile(new File(dir, "Other"), otherKeys.getPublicKeyFor("Other").getEncoded());
+
+		FileSystemCertificateRepository ed25519 = new FileSystemCertificateRepository(new File(dir, "private.key")
+				.getPath(), dir.getPath(), SignatureAlgorithm.ED25519);
+		try {
+			Configuration configuration = new Configuration();
+			configuration.setSignatureAlgorithm("Other", SignatureAlgorithm.ECDSA_P256);
+			configuration.setCertificateRepository(ed25519);
+
+			Assert.assertEquals(keys.getPrivateKey(), ed25519.getPrivateKey());
+			Assert.assertEquals(keys.getPublicKeyFor("Test"), ed25519.getPublicKeyFor("Test"));
+			Assert.assertEquals(otherKeys.getPublicKeyFor("Other"), ed25519.getPublicKeyFor("Other"));
+		} finally {
+			ed25519.close();
+		}
+
+		StringBase64CertificateRepository base64 = new StringBase64CertificateRepository(SignatureAlgorithm.ED25519);
+		new Configuration().setCertificateRepository(base64);
+		base64.configurePublicKey("Test", new String(Base64.encodeBase64(keys.getPublicKeyFor("Test").getEncoded())));
+		Assert.assertEquals(keys.getPublicKeyFor("Test"), base64.getPublicKeyFor("Test"));
+	}
+
+	@Test
+	public void testPreload() throws IOException, GeneralSecurityException {
+		for (int i = 0; i < 20; i++) {
+			StringBase64CertificateRepository keys = GenerateKeysUtil.generateKeys("Test" + i);
+			FileUtils.writeByteArrayToFile(new File(dir, "Test" + i), keys.getPublicKeyFor("Test" + i).getEncoded());
+		}
+
+		Assert.assertEquals(21, repository.preload(4));
+
+		for (int i = 0; i < 20; i++) {
+			PublicKey publicKey = repository.getPublicKeyFor("Test" + i);
+			Assert.assertNotNull(publicKey);
+			Assert.assertSame(publicKey, repository.getPublicKeyFor("Test" + i));
+		}
+		Assert.assertNotNull(repository.getPrivateKey());
+	}
+
+	@Test
+	public void testRotatedKeyFileClearsTheVerifiedTokens() throws IOException, GeneralSecurityException {
+		Configuration configuration = new Configuration();
+		configuration.setAllowedProviders("Test");
+		configuration.setCertificateRepository(repository);
+		configuration.setExpiryTimeout(60000);
+		configuration.setVerifiedTokenCache(new VerifiedTokenCache(10));
+
+		Credential credential = new Credential("test", "Test");
+		credential.setSignature(AuthenticationUtil.sign(credential, repository));
+		String token = credential.toStringFull();
+
+		BatchVerifier verifier = new BatchVerifier(configuration);
+		try {
+			Assert.assertTrue(verifier.verify(token).isValid());
+			Assert.assertEquals(1, configuration.getVerifiedTokenCache().size());
+
+			storeKeys();
+			repository.keyFileChanged(new File(dir, "Test").toPath().toAbsolutePath().normalize());
+
+			Assert.assertEquals(0, configuration.getVerifiedTokenCache().size());
+			Assert.assertEquals(Status.INVALID_SIGNATURE, verifier.verify(token).getStatus());
+		} finally {
+			verifier.close();
+		}
+	}
+
+	@Test
+	public void testChangedKeyFilesAreReloaded() throws IOException, GeneralSecurityException,
+			InterruptedException {
+		repository.getPrivateKey();
+		repository.getPublicKeyFor("Test");
+		repository.startWatching();
+
+		StringBase64CertificateRepository keys = storeKeys();
+
+		long deadline = System.currentTimeMillis() + 30000;
+		while (!keys.getPublicKeyFor("Test").equals(repository.getPublicKeyFor("Test"))
+				|| !keys.getPrivateKey().equals(repository.getPrivateKey())) {
+			Assert.assertTrue("Keys not reloaded.", System.currentTimeMillis() < deadline);
+			Thread.sleep(50);
+		}
+	}
+}
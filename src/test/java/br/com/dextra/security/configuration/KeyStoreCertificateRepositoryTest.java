@@ -0,0 +1,80 @@
+package br.com.dextra.security.configuration;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PublicKey;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.utils.AuthenticationUtil;
+
+public class KeyStoreCertificateRepositoryTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("keystore", ".p12");
+
+		InputStream in = getClass().getClassLoader().getResourceAsStream("keystore.p12");
+		try {
+			FileUtils.writeByteArrayToFile(file, IOUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(file);
+	}
+
+	@Test
+	public void testIndexedKeys() {
+		KeyStoreCertificateRepository repository = new KeyStoreCertificateRepository(file.getPath(), "changeit",
+				"test");
+
+		Assert.assertNotNull(repository.getPrivateKey());
+		Assert.assertNotNull(repository.getPublicKeyFor("Test"));
+		Assert.assertNotNull(repository.getPublicKeyFor("Other"));
+		Assert.assertNull(repository.getPublicKeyFor("Unknown"));
+		Assert.assertNull(repository.getSecretKey());
+
+		Credential credential = new Credential("test", "Test");
+		String signature = AuthenticationUtil.sign(credential, repository);
+		Assert.assertTrue(AuthenticationUtil.verify(credential, signature, repository));
+	}
+
+	@Test
+	public void testClearCachesReloadsTheKeystore() throws IOException, GeneralSecurityException {
+		KeyStoreCertificateRepository repository = new KeyStoreCertificateRepository(file.getPath(), "changeit",
+				"test");
+		PublicKey publicKey = repository.getPublicKeyFor("Other");
+		Assert.assertNotNull(publicKey);
+		Assert.assertSame(publicKey, repository.getPublicKeyFor("Other"));
+
+		KeyStore empty = KeyStore.getInstance("PKCS12");
+		empty.load(null, null);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			empty.store(out, "changeit".toCharArray());
+		} finally {
+			out.close();
+		}
+
+		repository.clearCaches();
+
+		Assert.assertNull(repository.getPublicKeyFor("Other"));
+		Assert.assertNull(repository.getPrivateKey());
+	}
+}
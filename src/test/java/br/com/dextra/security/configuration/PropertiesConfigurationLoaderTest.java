@@ -0,0 +1,102 @@
+package br.com.dextra.security.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.TokenFormat;
+import br.com.dextra.security.exceptions.ConfigurationException;
+import br.com.dextra.security.utils.AuthenticationUtil;
+import br.com.dextra.security.utils.SignatureAlgorithm;
+
+public class PropertiesConfigurationLoaderTest {
+
+	private ClassLoader loader = getClass().getClassLoader();
+
+	@Test
+	public void testBuildFromPropertiesFile() {
+		Configuration configuration = Configuration.buildFromFile(loader, "security.properties");
+
+		Assert.assertTrue(configuration.getCertificateRepository() instanceof StringBase64CertificateRepository);
+		Assert.assertEquals("Test", configuration.getMyProvider());
+		Assert.assertTrue(configuration.getAllowedProviders().contains("Test"));
+		Assert.assertTrue(configuration.getAllowedProviders().contains("Other"));
+		Assert.assertTrue(configuration.getAllowedProviders().contains("Another"));
+		Assert.assertEquals(1800000, configuration.getExpiryTimeout());
+		Assert.assertEquals(120000, configuration.getRenewTimeout());
+		Assert.assertEquals(10000, configuration.getRenewJitter());
+		Assert.assertNull(configuration.getSignatureAlgorithm());
+		Assert.assertEquals(SignatureAlgorithm.ECDSA_P256, configuration.getSignatureAlgorithmFor("Other"));
+		Assert.assertEquals(TokenFormat.V2, configuration.getTokenFormat());
+		Assert.assertNotNull(configuration.getVerifiedTokenCache());
+		Assert.assertNull(configuration.getRenewalCache());
+		Assert.assertTrue(configuration.getNotAuthenticatedHandler() instanceof RedirectResponseHandler);
+		Assert.assertTrue(configuration.getAuthenticationExpiredHandler() instanceof ForbiddenResponseHandler);
+		Assert.assertTrue(configuration.getSelfVerificationPolicy() instanceof FirstSignaturesSelfVerificationPolicy);
+	}
+
+	@Test
+	public void testBeanShellIsTheFallback() {
+		Assert.assertTrue(Configuration.getLoaderFor("security.bsh") instanceof BeanShellConfigurationLoader);
+
+		Configuration configuration = Configuration.buildFromFile(loader, "security.bsh");
+		Assert.assertEquals("Test", configuration.getMyProvider());
+		Assert.assertEquals(1800000, configuration.getExpiryTimeout());
+	}
+
+	@Test
+	public void testKeyStoreRepository() throws IOException {
+		File file = File.createTempFile("keystore", ".p12");
+		file.deleteOnExit();
+		InputStream in = loader.getResourceAsStream("keystore.p12");
+		try {
+			FileUtils.writeByteArrayToFile(file, IOUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("certificateRepository", "keystore");
+		properties.setProperty("certificateRepository.path", file.getPath());
+		properties.setProperty("certificateRepository.storePassword", "changeit");
+		properties.setProperty("certificateRepository.privateKeyAlias", "test");
+		properties.setProperty("myProvider", "test");
+		properties.setProperty("signatureAlgorithm", "ECDSA_P256");
+
+		Configuration configuration = new PropertiesConfigurationLoader().load(loader, properties);
+		configuration.validate();
+
+		Credential credential = new Credential("test", "test");
+		String signature = AuthenticationUtil.sign(credential, configuration);
+		Assert.assertTrue(AuthenticationUtil.verify(credential, signature, configuration));
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testUnknownKey() {
+		Properties properties = new Properties();
+		properties.setProperty("myProvider", "Test");
+		properties.setProperty("expiryTimout", "1000");
+
+		new PropertiesConfigurationLoader().load(loader, properties);
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testInvalidNumber() {
+		Properties properties = new Properties();
+		properties.setProperty("expiryTimeout", "30min");
+
+		new PropertiesConfigurationLoader().load(loader, properties);
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testMissingFile() {
+		Configuration.buildFromFile(loader, "missing.properties");
+	}
+}
@@ -0,0 +1,108 @@
+package br.com.dextra.security.configuration;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.cache.VerifiedTokenCache;
+import br.com.dextra.security.exceptions.ConfigurationException;
+import br.com.dextra.security.utils.AuthenticationUtil;
+import br.com.dextra.security.utils.GenerateKeysUtil;
+import br.com.dextra.security.utils.KeyIdUtil;
+
+public class RotatingCertificateRepositoryTest {
+
+	private RotatingCertificateRepository repository;
+
+	@Before
+	public void setUp() throws GeneralSecurityException, IOException {
+		repository = new RotatingCertificateRepository("2011a", GenerateKeysUtil.generateKeys("Test"));
+	}
+
+	@Test
+	public void testSignaturesCarryTheActiveKeyId() {
+		Credential credential = new Credential("test", "Test");
+		String signature = AuthenticationUtil.sign(credential, repository);
+
+		Assert.assertEquals("2011a", KeyIdUtil.keyIdOf(signature));
+		Assert.assertTrue(AuthenticationUtil.verify(credential, signature, repository));
+		Assert.assertTrue(AuthenticationUtil.verify(credential, KeyIdUtil.unmark(signature), repository));
+		Assert.assertFalse(AuthenticationUtil.verify(credential, "2011b." + KeyIdUtil.unmark(signature), repository));
+	}
+
+	@Test
+	public void testRotation() throws GeneralSecurityException, IOException {
+		Credential old = new Credential("test", "Test");
+		String oldSignature = AuthenticationUtil.sign(old, repository);
+
+		repository.addKey("2011b", GenerateKeysUtil.generateKeys("Test"));
+		repository.setActiveKeyId("2011b");
+
+		Credential current = new Credential("test", "Test");
+		String currentSignature = AuthenticationUtil.sign(current, repository);
+		Assert.assertEquals("2011b", KeyIdUtil.keyIdOf(currentSignature));
+
+		Assert.assertTrue(AuthenticationUtil.verify(old, oldSignature, repository));
+		Assert.assertTrue(AuthenticationUtil.verify(current, currentSignature, repository));
+
+		repository.retireKey("2011a", old.getTimestampMillis() + 1);
+		Assert.assertTrue(AuthenticationUtil.verify(old, oldSignature, repository));
+
+		repository.retireKey("2011a", old.getTimestampMillis());
+		Assert.assertFalse(AuthenticationUtil.verify(old, oldSignature, repository));
+		Assert.assertTrue(AuthenticationUtil.verify(current, currentSignature, repository));
+	}
+
+	@Test
+	public void testRetiredKeysClearTheVerifiedTokens() throws GeneralSecurityException, IOException {
+		Configuration configuration = new Configuration();
+		configuration.setCertificateRepository(repository);
+		configuration.setVerifiedTokenCache(new VerifiedTokenCache(10));
+
+		repository.addKey("2011b", GenerateKeysUtil.generateKeys("Test"));
+		repository.setActiveKeyId("2011b");
+
+		configuration.getVerifiedTokenCache().put("token", new Credential("test", "Test"), Long.MAX_VALUE);
+		repository.retireKey("2011a", System.currentTimeMillis());
+		Assert.assertEquals(0, configuration.getVerifiedTokenCache().size());
+
+		configuration.getVerifiedTokenCache().put("token", new Credential("test", "Test"), Long.MAX_VALUE);
+		repository.removeKey("2011a");
+		Assert.assertEquals(0, configuration.getVerifiedTokenCache().size());
+	}
+
+	@Test
+	public void testKeyIdsArePerProvider() throws GeneralSecurityException, IOException {
+		StringBase64CertificateRepository other = GenerateKeysUtil.generateKeys("Other");
+		StringBase64CertificateRepository otherRotated = GenerateKeysUtil.generateKeys("Other");
+		repository.addPublicKey("Other", "2011a", other.getPublicKeyFor("Other"));
+		repository.addPublicKey("Other", "2", otherRotated.getPublicKeyFor("Other"));
+
+		Credential credential = new Credential("test", "Other");
+		String signature = "2." + AuthenticationUtil.sign(credential, otherRotated);
+		Assert.assertTrue(AuthenticationUtil.verify(credential, signature, repository));
+		Assert.assertFalse(AuthenticationUtil.verify(credential, "2011a." + KeyIdUtil.unmark(signature), repository));
+
+		Credential own = new Credential("test", "Test");
+		String ownSignature = AuthenticationUtil.sign(own, repository);
+		Assert.assertEquals("2011a", KeyIdUtil.keyIdOf(ownSignature));
+		Assert.assertTrue(AuthenticationUtil.verify(own, ownSignature, repository));
+
+		repository.retirePublicKey("Other", "2", credential.getTimestampMillis());
+		Assert.assertFalse(AuthenticationUtil.verify(credential, signature, repository));
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testActiveKeyCanNotBeRetired() {
+		repository.retireKey("2011a", System.currentTimeMillis());
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testInvalidKeyId() throws GeneralSecurityException, IOException {
+		repository.addKey("2011.b", GenerateKeysUtil.generateKeys("Test"));
+	}
+}
@@ -0,0 +1,150 @@
+package br.com.dextra.security.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.configuration.CertificateRepository;
+import br.com.dextra.security.utils.AuthenticationUtil;
+import br.com.dextra.security.utils.GenerateKeysUtil;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0, histogram.getPercentileNanos(0.99));
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(500.5, histogram.getMeanMicros(), 0.001);
+		Assert.assertEquals(1000, histogram.getMaxMicros(), 0.001);
+
+		long median = histogram.getPercentileNanos(0.5);
+		Assert.assertTrue(median >= 500000 && median < 1000000);
+		Assert.assertEquals(1000000, histogram.getPercentileNanos(0.999));
+	}
+
+	@Test
+	public void testBuckets() {
+		Assert.assertEquals(0, LatencyHistogram.bucketOf(0));
+		Assert.assertEquals(1, LatencyHistogram.bucketOf(1));
+		Assert.assertEquals(2, LatencyHistogram.bucketOf(3));
+		Assert.assertEquals(3, LatencyHistogram.bucketOf(4));
+		Assert.assertEquals(63, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testSeriesAreBounded() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.setMaximumSeries(2);
+
+		registry.record(Operation.VERIFY, "A", Outcome.SUCCESS, registry.start());
+		registry.record(Operation.VERIFY, "B", Outcome.SUCCESS, registry.start());
+		registry.record(Operation.VERIFY, "C", Outcome.SUCCESS, registry.start());
+		registry.record(Operation.VERIFY, "D", Outcome.SUCCESS, registry.start());
+		registry.record(Operation.VERIFY, "A", Outcome.SUCCESS, registry.start());
+
+		Assert.assertEquals(3, registry.getHistograms().size());
+		Assert.assertEquals(2, registry.getHistograms().get("verify.A.success").getCount());
+		Assert.assertEquals(2, registry.getHistograms().get("verify." + MetricsRegistry.OTHER_PROVIDERS + ".success")
+				.getCount());
+	}
+
+	@Test
+	public void testRecordingReusesTheHistograms() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.record(Operation.VERIFY, "A", Outcome.SUCCESS, registry.start());
+		registry.record(Operation.PARSE, null, Outcome.SUCCESS, registry.start());
+
+		LatencyHistogram histogram = registry.getHistogram(Operation.VERIFY, "A", Outcome.SUCCESS);
+		registry.record(Operation.VERIFY, "A", Outcome.SUCCESS, registry.start());
+		Assert.assertEquals(2, histogram.getCount());
+		Assert.assertEquals(1, registry.getHistograms().get("parse.success").getCount());
+
+		registry.clear();
+		registry.record(Operation.VERIFY, "A", Outcome.SUCCESS, registry.start());
+		registry.record(Operation.PARSE, null, Outcome.SUCCESS, registry.start());
+		Assert.assertEquals(1, registry.getHistograms().get("verify.A.success").getCount());
+		Assert.assertEquals(1, registry.getHistograms().get("parse.success").getCount());
+	}
+
+	@Test
+	public void testDisabled() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.setEnabled(false);
+		registry.record(Operation.PARSE, null, Outcome.SUCCESS, registry.start());
+
+		Assert.assertTrue(registry.getHistograms().isEmpty());
+	}
+
+	@Test
+	public void testExport() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.record(Operation.SIGN, "Test", Outcome.SUCCESS, registry.start());
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName sign = new ObjectName("test.metrics:type=Latency,operation=sign,provider=\"Test\",outcome=success");
+		ObjectName parse = new ObjectName("test.metrics:type=Latency,operation=parse,outcome=failure");
+
+		registry.export("test.metrics");
+		registry.export("test.metrics");
+		try {
+			registry.record(Operation.PARSE, null, Outcome.FAILURE, registry.start());
+
+			Assert.assertEquals(1L, server.getAttribute(sign, "Count"));
+			Assert.assertEquals(1L, server.getAttribute(parse, "Count"));
+
+			registry.unexport();
+			Assert.assertTrue(server.isRegistered(sign));
+		} finally {
+			registry.unexport();
+		}
+
+		Assert.assertFalse(server.isRegistered(sign));
+		Assert.assertFalse(server.isRegistered(parse));
+	}
+
+	@Test
+	public void testAuthenticationIsMeasured() throws GeneralSecurityException, IOException {
+		MetricsRegistry registry = MetricsRegistry.getInstance();
+		CertificateRepository repository = GenerateKeysUtil.generateKeys("Metrics");
+
+		LatencyHistogram sign = registry.getHistogram(Operation.SIGN, "Metrics", Outcome.SUCCESS);
+		LatencyHistogram verify = registry.getHistogram(Operation.VERIFY, "Metrics", Outcome.SUCCESS);
+		LatencyHistogram mismatch = registry.getHistogram(Operation.VERIFY, "Metrics", Outcome.FAILURE);
+		LatencyHistogram lookup = registry.getHistogram(Operation.KEY_LOOKUP, "Metrics", Outcome.SUCCESS);
+		LatencyHistogram parse = registry.getHistogram(Operation.PARSE, null, Outcome.SUCCESS);
+		long signed = sign.getCount();
+		long verified = verify.getCount();
+		long mismatched = mismatch.getCount();
+		long looked = lookup.getCount();
+		long parsed = parse.getCount();
+
+		Credential credential = new Credential("test", "Metrics");
+		String signature = AuthenticationUtil.sign(credential, repository);
+		credential.setSignature(signature);
+		Assert.assertEquals(signed + 1, sign.getCount());
+		Assert.assertEquals(verified + 1, verify.getCount());
+
+		Credential received = Credential.parse(credential.toStringFull());
+		Assert.assertTrue(parse.getCount() > parsed);
+
+		Assert.assertTrue(AuthenticationUtil.verify(received, signature, repository));
+		Assert.assertEquals(verified + 2, verify.getCount());
+		Assert.assertEquals(looked + 2, lookup.getCount());
+
+		Assert.assertFalse(AuthenticationUtil.verify(new Credential("other", "Metrics"), signature, repository));
+		Assert.assertEquals(mismatched + 1, mismatch.getCount());
+	}
+}
@@ -0,0 +1,96 @@
+package br.com.dextra.security.utils;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.com.dextra.security.Credential;
+import br.com.dextra.security.configuration.Configuration;
+import br.com.dextra.security.configuration.FirstSignaturesSelfVerificationPolicy;
+import br.com.dextra.security.configuration.NeverSelfVerificationPolicy;
+import br.com.dextra.security.configuration.SignatureMismatchHandler;
+import br.com.dextra.security.configuration.StringBase64CertificateRepository;
+
+public class AuthenticationUtilTest {
+
+	private static class CountingMismatchHandler implements SignatureMismatchHandler {
+
+		private int mismatches;
+
+		@Override
+		public void onMismatch(Credential credential, String signature) {
+			mismatches++;
+		}
+	}
+
+	private static Configuration createMismatchedConfiguration(CountingMismatchHandler handler)
+			throws GeneralSecurityException, IOException {
+		StringBase64CertificateRepository repository = GenerateKeysUtil.generateKeys("Test");
+		StringBase64CertificateRepository other = GenerateKeysUtil.generateKeys("Test");
+		repository.configurePublicKey("Test",
+				new String(Base64.encodeBase64(other.getPublicKeyFor("Test").getEncoded())));
+
+		Configuration config = new Configuration();
+		config.setCertificateRepository(repository);
+		config.setMyProvider("Test");
+		config.setSignatureMismatchHandler(handler);
+		return config;
+	}
+
+	@Test
+	public void testSignWithSelfVerification() throws GeneralSecurityException, IOException {
+		Configuration config = new Configuration();
+		config.setCertificateRepository(GenerateKeysUtil.generateKeys("Test"));
+		config.setMyProvider("Test");
+
+		Credential credential = new Credential("test", "Test");
+		String signature = AuthenticationUtil.sign(credential, config);
+
+		Assert.assertTrue(AuthenticationUtil.verify(credential, signature, config.getCertificateRepository()));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testMismatchedKeysFailByDefault() throws GeneralSecurityException, IOException {
+		Configuration config = createMismatchedConfiguration(null);
+		config.validate();
+
+		AuthenticationUtil.sign(new Credential("test", "Test"), config);
+	}
+
+	@Test
+	public void testMismatchReportedToHandler() throws GeneralSecurityException, IOException {
+		CountingMismatchHandler handler = new CountingMismatchHandler();
+		Configuration config = createMismatchedConfiguration(handler);
+
+		AuthenticationUtil.sign(new Credential("test", "Test"), config);
+
+		Assert.assertEquals(1, handler.mismatches);
+	}
+
+	@Test
+	public void testNeverVerify() throws GeneralSecurityException, IOException {
+		CountingMismatchHandler handler = new CountingMismatchHandler();
+		Configuration config = createMismatchedConfiguration(handler);
+		config.setSelfVerificationPolicy(new NeverSelfVerificationPolicy());
+
+		AuthenticationUtil.sign(new Credential("test", "Test"), config);
+
+		Assert.assertEquals(0, handler.mismatches);
+	}
+
+	@Test
+	public void testVerifyFirstSignaturesOnly() throws GeneralSecurityException, IOException {
+		CountingMismatchHandler handler = new CountingMismatchHandler();
+		Configuration config = createMismatchedConfiguration(handler);
+		config.setSelfVerificationPolicy(new FirstSignaturesSelfVerificationPolicy(2));
+
+		for (int i = 0; i < 5; i++) {
+			AuthenticationUtil.sign(new Credential("test", "Test"), config);
+		}
+
+		Assert.assertEquals(2, handler.mismatches);
+	}
+}
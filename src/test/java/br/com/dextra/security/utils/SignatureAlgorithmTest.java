@@ -0,0 +1,31 @@
+package br.com.dextra.security.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignatureAlgorithmTest {
+
+	@Test
+	public void testSignAndVerifyWithEveryAlgorithm() throws GeneralSecurityException {
+		SignatureEngine engine = new SignatureEngine();
+		byte[] data = "test|Test|20120207.000000000".getBytes();
+
+		for (SignatureAlgorithm algorithm : SignatureAlgorithm.values()) {
+			KeyPair pair = algorithm.generateKeyPair();
+
+			PublicKey publicKey = algorithm.decodePublicKey(pair.getPublic().getEncoded());
+			PrivateKey privateKey = algorithm.decodePrivateKey(pair.getPrivate().getEncoded());
+
+			Assert.assertEquals(algorithm, SignatureAlgorithm.forKey(publicKey));
+			Assert.assertEquals(algorithm, SignatureAlgorithm.forKey(privateKey));
+
+			byte[] signature = engine.sign(privateKey, data);
+			Assert.assertTrue(engine.verify(algorithm.name(), publicKey, data, signature));
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package br.com.dextra.security.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignatureEngineTest {
+
+	private static KeyPair generateKeyPair() throws GeneralSecurityException {
+		KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DSA");
+		keyGen.initialize(1024);
+		return keyGen.generateKeyPair();
+	}
+
+	@Test
+	public void testReusedEngines() throws GeneralSecurityException {
+		SignatureEngine engine = new SignatureEngine();
+		KeyPair pair = generateKeyPair();
+
+		for (int i = 0; i < 3; i++) {
+			byte[] data = ("data" + i).getBytes();
+			byte[] signature = engine.sign(pair.getPrivate(), data);
+
+			Assert.assertTrue(engine.verify("Test", pair.getPublic(), data, signature));
+			Assert.assertFalse(engine.verify("Test", pair.getPublic(), "other".getBytes(), signature));
+		}
+	}
+
+	@Test
+	public void testRotatedKeys() throws GeneralSecurityException {
+		SignatureEngine engine = new SignatureEngine();
+		KeyPair oldPair = generateKeyPair();
+		KeyPair newPair = generateKeyPair();
+
+		byte[] data = "data".getBytes();
+		byte[] oldSignature = engine.sign(oldPair.getPrivate(), data);
+		Assert.assertTrue(engine.verify("Test", oldPair.getPublic(), data, oldSignature));
+
+		byte[] newSignature = engine.sign(newPair.getPrivate(), data);
+		Assert.assertTrue(engine.verify("Test", newPair.getPublic(), data, newSignature));
+		Assert.assertFalse(engine.verify("Test", newPair.getPublic(), data, oldSignature));
+	}
+}
@@ -0,0 +1,56 @@
+package br.com.dextra.security.utils;
+
+import java.util.Random;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimestampCodecTest {
+
+	private static final DateTimeFormatter jodaFormat = DateTimeFormat.forPattern("yyyyMMdd.HHmmssSSS");
+
+	@Test
+	public void testFixedWidthMatchesJoda() {
+		// 2000 to 2018, where the time zone data bundled with Joda agrees with the one of the JDK
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			long millis = 946684800000L + (long) (random.nextDouble() * 568080000000L);
+
+			String formatted = TimestampCodec.format(millis);
+			Assert.assertEquals(jodaFormat.print(millis), formatted);
+			Assert.assertEquals(jodaFormat.parseMillis(formatted), TimestampCodec.parse(formatted));
+		}
+	}
+
+	@Test
+	public void testParseKnownTimestamp() {
+		String value = "20110706.105225185";
+		Assert.assertEquals(jodaFormat.parseMillis(value), TimestampCodec.parse(value));
+	}
+
+	@Test
+	public void testCompactRoundTrip() {
+		long millis = 1309960345185L;
+
+		String compact = TimestampCodec.formatCompact(millis);
+		Assert.assertEquals(TimestampCodec.COMPACT_PREFIX, compact.charAt(0));
+		Assert.assertTrue(compact.length() < TimestampCodec.FIXED_WIDTH_LENGTH);
+		Assert.assertEquals(millis, TimestampCodec.parse(compact));
+	}
+
+	@Test
+	public void testInvalidTimestamps() {
+		String[] invalid = { "", "20110706", "20110706-105225185", "20111306.105225185", "20110231.105225185",
+				"20110706.245225185", "2011O706.105225185", "e", "e-1", "e#1" };
+		for (String value : invalid) {
+			try {
+				TimestampCodec.parse(value);
+				Assert.fail("Accepted : " + value);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}